@@ -0,0 +1,196 @@
+package com.example.qrcodevariant;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.example.qrcodevariant.codec.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Recycles bitmaps between decodes and generates instead of allocating a fresh one each time.
+ * Released bitmaps are kept in buckets by allocation size and handed out again for anything that
+ * fits, either as {@link BitmapFactory.Options#inBitmap} for loads or reconfigured to new
+ * dimensions for drawing. The oldest bitmaps are recycled once the pool exceeds its byte cap.
+ *
+ * <p>Only bitmaps that came out of the pool, through {@link #get} or {@link #adopt}, are taken
+ * back by {@link #release}; anything else, such as cached thumbnails, is
+ * left alone. Safe to use from any thread.
+ */
+public class BitmapPool {
+
+    // A pooled bitmap may be at most this many times larger than the request it serves
+    private static final int MAX_SLACK = 2;
+
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    // Pooled bitmaps, oldest release first, for eviction
+    private final ArrayDeque<Bitmap> releaseOrder = new ArrayDeque<>();
+    private final Set<Bitmap> managed = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    private long pooledBytes;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** A mutable bitmap of exactly this size, reused when one fits. Contents are undefined. */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(bytesFor(width, height, config));
+        if (bitmap != null) {
+            bitmap.reconfigure(width, height, config);
+            return bitmap;
+        }
+        bitmap = Bitmap.createBitmap(width, height, config);
+        adopt(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Sets up {@code options} to decode into a pooled bitmap if one can hold the expected output.
+     * Pass the result of the decode to {@link #adopt}.
+     */
+    public synchronized void prepareDecode(BitmapFactory.Options options, int expectedWidth, int expectedHeight) {
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = take(bytesFor(expectedWidth, expectedHeight, config));
+    }
+
+    /**
+     * Returns a bitmap taken by {@link #prepareDecode} that the decoder refused, so it can serve
+     * another request.
+     */
+    public void putBack(BitmapFactory.Options options) {
+        if (options.inBitmap != null) {
+            Bitmap unused = options.inBitmap;
+            options.inBitmap = null;
+            synchronized (this) {
+                hits--;
+                misses++;
+            }
+            release(unused);
+        }
+    }
+
+    /** Lets the pool take back {@code bitmap} on release; counts it if it was newly allocated. */
+    public synchronized void adopt(Bitmap bitmap) {
+        if (managed.add(bitmap)) {
+            Metrics.add(Metrics.Counter.BITMAP_BYTES, bitmap.getAllocationByteCount());
+        }
+    }
+
+    /**
+     * Hands a bitmap that is no longer drawn or read back to the pool. Bitmaps the pool doesn't
+     * manage are ignored; managed ones that can't be reused are recycled.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !managed.contains(bitmap)) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > maxBytes) {
+            managed.remove(bitmap);
+            bitmap.recycle();
+            return;
+        }
+        if (releaseOrder.contains(bitmap)) {
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.push(bitmap);
+        releaseOrder.addLast(bitmap);
+        pooledBytes += size;
+        while (pooledBytes > maxBytes) {
+            evict(releaseOrder.pollFirst());
+        }
+    }
+
+    /** Recycles every pooled bitmap. */
+    public synchronized void clear() {
+        while (!releaseOrder.isEmpty()) {
+            evict(releaseOrder.pollFirst());
+        }
+    }
+
+    public synchronized int hitCount() {
+        return hits;
+    }
+
+    public synchronized int missCount() {
+        return misses;
+    }
+
+    public synchronized int evictionCount() {
+        return evictions;
+    }
+
+    public synchronized long pooledBytes() {
+        return pooledBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "bitmap pool: %d hits, %d misses, %d evicted, %d/%d KB",
+                hits, misses, evictions, pooledBytes / 1024, maxBytes / 1024);
+    }
+
+    // Smallest pooled bitmap that holds `bytes` without wasting more than MAX_SLACK times that
+    private Bitmap take(long bytes) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry((int) Math.min(bytes, Integer.MAX_VALUE));
+        if (entry == null || entry.getKey() > bytes * MAX_SLACK) {
+            misses++;
+            return null;
+        }
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pop();
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+        releaseOrder.remove(bitmap);
+        pooledBytes -= entry.getKey();
+        hits++;
+        return bitmap;
+    }
+
+    private void evict(Bitmap bitmap) {
+        int size = bitmap.getAllocationByteCount();
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        bucket.remove(bitmap);
+        if (bucket.isEmpty()) {
+            buckets.remove(size);
+        }
+        pooledBytes -= size;
+        managed.remove(bitmap);
+        bitmap.recycle();
+        evictions++;
+    }
+
+    private static long bytesFor(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel;
+        switch (config) {
+            case ALPHA_8:
+                bytesPerPixel = 1;
+                break;
+            case RGB_565:
+                bytesPerPixel = 2;
+                break;
+            default:
+                bytesPerPixel = 4;
+                break;
+        }
+        return (long) width * height * bytesPerPixel;
+    }
+}
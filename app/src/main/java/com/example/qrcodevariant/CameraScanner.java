@@ -0,0 +1,226 @@
+package com.example.qrcodevariant;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.example.qrcodevariant.codec.CodeLocator;
+import com.example.qrcodevariant.codec.CodeSpec;
+import com.example.qrcodevariant.codec.FrameFusion;
+import com.example.qrcodevariant.codec.LuminanceImage;
+import com.example.qrcodevariant.codec.Metrics;
+import com.example.qrcodevariant.codec.PerspectiveSampler;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Continuous scanning from the CameraX image-analysis stream. Frames are decoded on a
+ * dedicated thread straight from the Y plane, located and sampled through the code's border so
+ * it can be anywhere in view and at an angle; when the decoder falls behind CameraX keeps only
+ * the latest frame. Frames of the same code are fused cell by cell (see {@link FrameFusion}),
+ * and a result is posted to the main thread once every cell has been read with enough
+ * confidence, so a clean code commits in a couple of frames and a small or noisy one keeps
+ * accumulating instead of being rejected.
+ */
+public class CameraScanner {
+
+    private static final String TAG = "CameraScanner";
+
+    // Fused evidence every cell needs before a result is reported; a clean frame adds 1 per cell
+    private static final float ACCEPT_EVIDENCE = 2f;
+    // Consecutive frames without a code after which the fused evidence is dropped
+    private static final int MAX_LOST_FRAMES = 5;
+    // Leaves about 4 pixels per cell at the largest grid while keeping frames cheap
+    private static final Size ANALYSIS_SIZE = new Size(640, 480);
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the accepted payload and the number of cells the error
+         * correction flipped in the fused read.
+         */
+        void onCodeScanned(String binary, int correctedErrors);
+    }
+
+    private final Context context;
+    private final Executor mainExecutor;
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor();
+
+    // Only touched from the analysis thread
+    private final LuminanceImage frame = new LuminanceImage();
+    private final FrameFusion fusion = new FrameFusion(ACCEPT_EVIDENCE);
+    private final CodeLocator locator = new CodeLocator();
+    private final PerspectiveSampler sampler = new PerspectiveSampler();
+    private final float[] corners = new float[8];
+    private int lostFrames;
+    // Sensor timestamps for estimating the frames CameraX dropped while we were busy
+    private long lastTimestamp;
+    private long frameInterval = Long.MAX_VALUE;
+
+    private volatile CodeSpec spec;
+    private ProcessCameraProvider cameraProvider;
+    // Bumped by every start() and stop(); callbacks from an older start are ignored. Main thread only
+    private int generation;
+
+    public CameraScanner(Context context) {
+        this.context = context.getApplicationContext();
+        this.mainExecutor = ContextCompat.getMainExecutor(context);
+    }
+
+    /**
+     * Starts the preview and analysis streams. The caller must already hold the camera permission.
+     */
+    public void start(final LifecycleOwner owner, final PreviewView previewView, CodeSpec spec,
+                      final Listener listener) {
+        this.spec = spec;
+        final int started = ++generation;
+        final ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(context);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                bind(future, started, owner, previewView, listener);
+            }
+        }, mainExecutor);
+    }
+
+    // Runs on the main thread once the camera provider is ready
+    private void bind(ListenableFuture<ProcessCameraProvider> future, final int started, LifecycleOwner owner,
+                      PreviewView previewView, final Listener listener) {
+        try {
+            cameraProvider = future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            Log.e(TAG, "Camera provider unavailable", e);
+            return;
+        }
+        // Stopped (or restarted) while the provider was still loading
+        if (started != generation) {
+            return;
+        }
+
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setResolutionSelector(new ResolutionSelector.Builder()
+                        .setResolutionStrategy(new ResolutionStrategy(ANALYSIS_SIZE,
+                                ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                        .build())
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .build();
+        analysis.setAnalyzer(analysisExecutor, new ImageAnalysis.Analyzer() {
+            @Override
+            public void analyze(@NonNull ImageProxy image) {
+                CameraScanner.this.analyze(image, started, listener);
+            }
+        });
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(owner, CameraSelector.DEFAULT_BACK_CAMERA, preview, analysis);
+    }
+
+    public void setCodeSpec(CodeSpec spec) {
+        this.spec = spec;
+    }
+
+    /** Stops both streams; safe to call when not started. */
+    public void stop() {
+        generation++;
+        if (cameraProvider != null) {
+            cameraProvider.unbindAll();
+        }
+        analysisExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                fusion.reset();
+                lostFrames = 0;
+                lastTimestamp = 0L;
+            }
+        });
+    }
+
+    /** Stops scanning and releases the analysis thread. The scanner cannot be restarted. */
+    public void shutdown() {
+        stop();
+        analysisExecutor.shutdown();
+    }
+
+    private void analyze(@NonNull ImageProxy image, final int started, final Listener listener) {
+        try {
+            countFrame(image.getImageInfo().getTimestamp());
+            ImageProxy.PlaneProxy yPlane = image.getPlanes()[0];
+            ByteBuffer buffer = yPlane.getBuffer();
+
+            frame.setLuminance(buffer, yPlane.getRowStride(), 0, 0, image.getWidth(), image.getHeight());
+
+            // The border fixes the code's position and orientation, so the frame rotation
+            // doesn't matter; frames without a code are skipped
+            CodeSpec current = spec;
+            if (!locator.locateCorners(frame, current.getGridSize(), corners)) {
+                Metrics.increment(Metrics.Counter.DECODE_FAILURE);
+                if (++lostFrames == MAX_LOST_FRAMES) {
+                    fusion.reset();
+                }
+                return;
+            }
+            lostFrames = 0;
+            // Each frame is sampled through its own border, so the cells line up for fusion
+            // even when the code moved between frames
+            sampler.setCorners(corners);
+            Metrics.increment(Metrics.Counter.DECODE_SUCCESS);
+            if (fusion.offer(frame, current, sampler)) {
+                // Only an accepted result is turned into a String for the UI
+                final String binary = fusion.getPayload().toBinaryString();
+                final int corrected = fusion.getCorrectedErrors();
+                mainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A frame analysed just before stop() must not report afterwards
+                        if (started == generation) {
+                            listener.onCodeScanned(binary, corrected);
+                        }
+                    }
+                });
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Counts an analysed frame and estimates how many were dropped before it, from the gap to
+     * the previous frame's timestamp in units of the shortest gap seen so far.
+     */
+    private void countFrame(long timestamp) {
+        if (!Metrics.isEnabled()) {
+            lastTimestamp = 0L;
+            return;
+        }
+        Metrics.increment(Metrics.Counter.FRAMES_ANALYZED);
+        if (lastTimestamp != 0L && timestamp > lastTimestamp) {
+            long gap = timestamp - lastTimestamp;
+            frameInterval = Math.min(frameInterval, gap);
+            long dropped = Math.round(gap / (double) frameInterval) - 1;
+            if (dropped > 0) {
+                Metrics.add(Metrics.Counter.FRAMES_DROPPED, dropped);
+            }
+        }
+        lastTimestamp = timestamp;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.qrcodevariant;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.util.LruCache;
+
+import com.example.qrcodevariant.codec.CodeSpec;
+import com.example.qrcodevariant.codec.ContentHash;
+import com.example.qrcodevariant.codec.LuminanceImage;
+import com.example.qrcodevariant.codec.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Bounded LRU of decode results, so re-picking an image or re-submitting an unchanged frame
+ * skips loading and decoding. Entries keep a small thumbnail for the preview; the cache is sized
+ * by their bytes.
+ *
+ * <p>Keys combine the image identity with the {@link CodeSpec}, since the same picture decodes
+ * differently under another grid size or error correction. Gallery images are identified by URI
+ * plus last-modified time and size when the provider reports them, otherwise by a hash of the
+ * file's bytes; already loaded bitmaps by a hash of their luminance.
+ */
+public class DecodeCache {
+
+    /** A cached decode, as handed to {@link DecodePipeline.Callback#onResult}. */
+    public static final class Entry {
+        /** Scaled-down copy of the decoded image; shared, never recycle it. */
+        public final Bitmap thumbnail;
+        public final int rotationDegrees;
+        public final String binary;
+        public final int correctedErrors;
+
+        Entry(Bitmap thumbnail, int rotationDegrees, String binary, int correctedErrors) {
+            this.thumbnail = thumbnail;
+            this.rotationDegrees = rotationDegrees;
+            this.binary = binary;
+            this.correctedErrors = correctedErrors;
+        }
+    }
+
+    // Long side of the stored thumbnails
+    private static final int THUMBNAIL_SIZE = 512;
+
+    private final ContentResolver contentResolver;
+    private final LruCache<String, Entry> entries;
+    private final byte[] hashBuffer = new byte[64 * 1024];
+
+    /** @param maxBytes upper bound on the thumbnails and payloads held */
+    public DecodeCache(ContentResolver contentResolver, int maxBytes) {
+        this.contentResolver = contentResolver;
+        this.entries = new LruCache<String, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Entry entry) {
+                return entry.thumbnail.getAllocationByteCount() + 2 * entry.binary.length();
+            }
+        };
+    }
+
+    /**
+     * Identifies the image behind {@code uri}. Costs one metadata query, or reading the file
+     * once when the provider doesn't report a modification time.
+     */
+    public String keyFor(Uri uri, CodeSpec spec) throws IOException {
+        String version = queryVersion(uri);
+        if (version != null) {
+            return "uri:" + uri + "@" + version + "|" + spec;
+        }
+        long hash = ContentHash.INITIAL;
+        try (InputStream in = contentResolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + uri);
+            }
+            int n;
+            while ((n = in.read(hashBuffer)) > 0) {
+                hash = ContentHash.update(hash, hashBuffer, 0, n);
+            }
+        }
+        return String.format(Locale.US, "bytes:%016x|%s", hash, spec);
+    }
+
+    /** Identifies an image already in memory by its pixels. */
+    public String keyFor(LuminanceImage image, CodeSpec spec) {
+        return String.format(Locale.US, "luma:%016x|%s", image.contentHash(), spec);
+    }
+
+    /** @return the cached result, or null on a miss */
+    public Entry get(String key) {
+        Entry entry = entries.get(key);
+        Metrics.increment(entry != null ? Metrics.Counter.CACHE_HIT : Metrics.Counter.CACHE_MISS);
+        return entry;
+    }
+
+    /** Stores a result, keeping a scaled-down copy of {@code bitmap}. */
+    public Entry put(String key, Bitmap bitmap, int rotationDegrees, String binary, int correctedErrors) {
+        Entry entry = new Entry(thumbnail(bitmap), rotationDegrees, binary, correctedErrors);
+        entries.put(key, entry);
+        return entry;
+    }
+
+    public int hitCount() {
+        return entries.hitCount();
+    }
+
+    public int missCount() {
+        return entries.missCount();
+    }
+
+    public int evictionCount() {
+        return entries.evictionCount();
+    }
+
+    public void clear() {
+        entries.evictAll();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "cache: %d hits, %d misses, %d evicted, %d/%d KB",
+                hitCount(), missCount(), evictionCount(), entries.size() / 1024, entries.maxSize() / 1024);
+    }
+
+    private static Bitmap thumbnail(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = THUMBNAIL_SIZE / (float) Math.max(width, height);
+        if (scale >= 1f) {
+            Bitmap.Config config = bitmap.getConfig();
+            return bitmap.copy(config != null ? config : Bitmap.Config.ARGB_8888, false);
+        }
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), true);
+    }
+
+    // Modification time and size as reported by MediaStore or the documents provider, or null
+    private String queryVersion(Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return null;
+        }
+        try (Cursor cursor = contentResolver.query(uri, null, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            long modified = readLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+            if (modified < 0) {
+                // MediaStore reports seconds
+                long seconds = readLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED);
+                modified = seconds < 0 ? -1 : seconds * 1000;
+            }
+            if (modified < 0) {
+                return null;
+            }
+            return modified + ":" + readLong(cursor, OpenableColumns.SIZE);
+        } catch (RuntimeException e) {
+            // Some providers reject a null projection or unknown columns
+            return null;
+        }
+    }
+
+    private static long readLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        if (index < 0 || cursor.isNull(index)) {
+            return -1;
+        }
+        return cursor.getLong(index);
+    }
+}
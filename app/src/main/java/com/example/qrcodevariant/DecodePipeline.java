@@ -0,0 +1,560 @@
+package com.example.qrcodevariant;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.qrcodevariant.codec.BitBuffer;
+import com.example.qrcodevariant.codec.CodeDecoder;
+import com.example.qrcodevariant.codec.CodeLocator;
+import com.example.qrcodevariant.codec.CodeSpec;
+import com.example.qrcodevariant.codec.DecodedCode;
+import com.example.qrcodevariant.codec.LuminanceImage;
+import com.example.qrcodevariant.codec.Metrics;
+import com.example.qrcodevariant.codec.MultiCodeDecoder;
+import com.example.qrcodevariant.codec.PerspectiveSampler;
+import com.example.qrcodevariant.codec.Region;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads and decodes images off the main thread. Only the most recent request matters: submitting
+ * a new image cancels the one in flight, and callbacks of superseded requests are dropped.
+ *
+ * <p>Gallery images are loaded in two stages: a small preview locates the code, then only that
+ * region is decoded from the original at full resolution (capped at {@link #MAX_WIDTH} x
+ * {@link #MAX_HEIGHT}), so small codes in large photos keep their detail.
+ *
+ * <p>EXIF rotation is never applied to the pixels. The decoder maps cell coordinates through
+ * the orientation instead, and the rotation is handed back so the UI can rotate the preview.
+ *
+ * <p>Loaded bitmaps come from, and intermediate ones go back to, a shared {@link BitmapPool};
+ * the UI releases result bitmaps to the same pool once it stops showing them.
+ *
+ * <p>Results of {@link #submit} are kept in a {@link DecodeCache}; submitting the same image
+ * with the same settings again is answered from it without loading the image.
+ *
+ * <p>{@link #submitAll} reads every code in a photo instead of one; the codes are decoded in
+ * parallel on the common fork-join pool.
+ */
+public class DecodePipeline {
+
+    public enum Stage {
+        LOADING,
+        DECODING
+    }
+
+    /** All callbacks are delivered on the main thread, and only for the latest request. */
+    public interface StatusCallback {
+        void onProgress(Stage stage);
+
+        void onError(Exception e);
+    }
+
+    public interface Callback extends StatusCallback {
+        /**
+         * @param bitmap          the image as stored, not rotated; a shared thumbnail when the
+         *                        result came from the cache, so never recycle it
+         * @param rotationDegrees clockwise rotation that makes {@code bitmap} upright
+         * @param binary          the decoded payload bits
+         * @param correctedErrors cells the error correction had to flip
+         */
+        void onResult(Bitmap bitmap, int rotationDegrees, String binary, int correctedErrors);
+
+        /**
+         * The image loaded but shows no code with a readable border. Nothing is cached, so
+         * picking the image again tries again.
+         *
+         * @param bitmap          the image as stored, not rotated
+         * @param rotationDegrees clockwise rotation that makes {@code bitmap} upright
+         */
+        void onNotFound(Bitmap bitmap, int rotationDegrees);
+    }
+
+    public interface MultiCallback extends StatusCallback {
+        /**
+         * @param bitmap          the image as stored, not rotated
+         * @param rotationDegrees clockwise rotation that makes {@code bitmap} upright
+         * @param codes           every code found, with bounds in {@code bitmap} pixels
+         */
+        void onResults(Bitmap bitmap, int rotationDegrees, List<DecodedCode> codes);
+    }
+
+    private static final int MAX_WIDTH = 1024;
+    private static final int MAX_HEIGHT = 1024;
+    // Long side of the low-resolution pass used to find the code
+    private static final int PREVIEW_SIZE = 512;
+    // Long side for multi-code photos; many codes share the frame, so each needs more pixels
+    private static final int MULTI_SIZE = 2048;
+    // Locating every code costs about 23 bytes per pixel on top of the bitmap (pixels, luma,
+    // two summed-area tables, mask, labels, fill stack), so the frame is capped at a 4:3 MULTI_SIZE
+    private static final int MULTI_MAX_PIXELS = MULTI_SIZE * MULTI_SIZE * 3 / 4;
+    private static final int CACHE_BYTES = 8 * 1024 * 1024;
+
+    private final ContentResolver contentResolver;
+    private final DecodeCache cache;
+    private final BitmapPool bitmapPool;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // One worker and one waiting slot; anything older than the waiting task is discarded
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1),
+            new ThreadPoolExecutor.DiscardOldestPolicy());
+
+    // Only touched from the worker thread
+    private final CodeDecoder decoder = new CodeDecoder();
+    private final CodeLocator locator = new CodeLocator();
+    private final LuminanceImage frame = new LuminanceImage();
+    private final Region codeBounds = new Region();
+    private final float[] codeCorners = new float[8];
+    private final BitBuffer bits = new BitBuffer();
+    private final PerspectiveSampler sampler = new PerspectiveSampler();
+    private final MultiCodeDecoder multiDecoder = new MultiCodeDecoder();
+    private int[] pixelBuffer = new int[0];
+
+    // Main-thread state
+    private Future<?> current;
+    private int generation;
+
+    public DecodePipeline(ContentResolver contentResolver, BitmapPool bitmapPool) {
+        this.contentResolver = contentResolver;
+        this.bitmapPool = bitmapPool;
+        this.cache = new DecodeCache(contentResolver, CACHE_BYTES);
+    }
+
+    /** Hit and miss statistics live here; safe to read from any thread. */
+    public DecodeCache getCache() {
+        return cache;
+    }
+
+    /** Loads, samples and decodes the image behind {@code uri}. */
+    public void submit(final Uri uri, final CodeSpec spec, final Callback callback) {
+        final int id = startRequest();
+        current = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    post(id, callback, Stage.LOADING);
+                    String key = cache.keyFor(uri, spec);
+                    DecodeCache.Entry cached = cache.get(key);
+                    if (cached != null) {
+                        postResult(id, callback, cached);
+                        return;
+                    }
+
+                    long start = Metrics.start();
+                    Bitmap bitmap = loadCodeRegion(uri, spec.getGridSize());
+                    int rotation = readExifRotation(uri);
+                    Metrics.stop(Metrics.Stage.LOAD, start);
+                    decodeAndPost(id, bitmap, rotation, spec, key, callback);
+                } catch (CancellationException ignored) {
+                    // Superseded by a newer request
+                } catch (IOException | RuntimeException e) {
+                    Metrics.increment(Metrics.Counter.DECODE_FAILURE);
+                    postError(id, callback, e);
+                }
+            }
+        });
+    }
+
+    /** Decodes an already loaded bitmap, cached by its pixels. */
+    public void submit(final Bitmap bitmap, final CodeSpec spec, final Callback callback) {
+        final int id = startRequest();
+        current = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    decodeAndPost(id, bitmap, 0, spec, null, callback);
+                } catch (CancellationException ignored) {
+                    // Superseded by a newer request
+                } catch (RuntimeException e) {
+                    Metrics.increment(Metrics.Counter.DECODE_FAILURE);
+                    postError(id, callback, e);
+                }
+            }
+        });
+    }
+
+    /** Loads the image behind {@code uri} and decodes every code in it. */
+    public void submitAll(final Uri uri, final CodeSpec spec, final MultiCallback callback) {
+        final int id = startRequest();
+        current = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    post(id, callback, Stage.LOADING);
+                    long start = Metrics.start();
+                    final Bitmap bitmap = loadSampled(uri, MULTI_SIZE, MULTI_MAX_PIXELS);
+                    final int rotation = readExifRotation(uri);
+                    Metrics.stop(Metrics.Stage.LOAD, start);
+                    checkCancelled();
+                    post(id, callback, Stage.DECODING);
+
+                    readLuminance(bitmap);
+                    final List<DecodedCode> codes = multiDecoder.decodeAll(frame, spec);
+                    if (codes.isEmpty()) {
+                        Metrics.increment(Metrics.Counter.DECODE_FAILURE);
+                    } else {
+                        Metrics.add(Metrics.Counter.DECODE_SUCCESS, codes.size());
+                    }
+
+                    checkCancelled();
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (id == generation) {
+                                callback.onResults(bitmap, rotation, codes);
+                            }
+                        }
+                    });
+                } catch (CancellationException ignored) {
+                    // Superseded by a newer request
+                } catch (IOException | RuntimeException e) {
+                    Metrics.increment(Metrics.Counter.DECODE_FAILURE);
+                    postError(id, callback, e);
+                }
+            }
+        });
+    }
+
+    /** Cancels the request in flight, if any. Call from the main thread. */
+    public void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /** Cancels pending work and stops the worker thread. */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private int startRequest() {
+        cancel();
+        return generation;
+    }
+
+    /**
+     * Decodes {@code bitmap} and caches the result under {@code key}; a null key means the
+     * bitmap is identified by its pixels, which can still be answered from the cache.
+     */
+    private void decodeAndPost(int id, Bitmap bitmap, int rotation, CodeSpec spec, String key, Callback callback) {
+        checkCancelled();
+        post(id, callback, Stage.DECODING);
+
+        readLuminance(bitmap);
+        if (key == null) {
+            key = cache.keyFor(frame, spec);
+            DecodeCache.Entry cached = cache.get(key);
+            if (cached != null) {
+                postResult(id, callback, cached);
+                return;
+            }
+        }
+        // Follow the code's own border, which also fixes its orientation. Without one nothing
+        // says there is a code, and reading the cells anyway would only produce random bits
+        if (!locator.locateCorners(frame, spec.getGridSize(), codeCorners)) {
+            Metrics.increment(Metrics.Counter.DECODE_FAILURE);
+            checkCancelled();
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (id == generation) {
+                        callback.onNotFound(bitmap, rotation);
+                    }
+                }
+            });
+            return;
+        }
+        sampler.setCorners(codeCorners);
+        final int corrected = decoder.decodePayload(frame, spec, sampler, bits);
+        Metrics.increment(Metrics.Counter.DECODE_SUCCESS);
+        final String binary = bits.toBinaryString();
+        cache.put(key, bitmap, rotation, binary, corrected);
+
+        checkCancelled();
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (id == generation) {
+                    callback.onResult(bitmap, rotation, binary, corrected);
+                }
+            }
+        });
+    }
+
+    private void postResult(final int id, final Callback callback, final DecodeCache.Entry entry) {
+        checkCancelled();
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (id == generation) {
+                    callback.onResult(entry.thumbnail, entry.rotationDegrees, entry.binary, entry.correctedErrors);
+                }
+            }
+        });
+    }
+
+    private void readLuminance(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (pixelBuffer.length < width * height) {
+            pixelBuffer = new int[width * height];
+        }
+        bitmap.getPixels(pixelBuffer, 0, width, 0, 0, width, height);
+        frame.setArgb(pixelBuffer, width, height);
+    }
+
+    /**
+     * Loads the part of the image that holds the code. A preview of about
+     * {@link #PREVIEW_SIZE} pixels is searched for the code's border, then only that region is
+     * decoded from the original. Falls back to the whole image, sampled down to roughly
+     * {@link #MAX_WIDTH} x {@link #MAX_HEIGHT}, when the preview shows no code.
+     */
+    private Bitmap loadCodeRegion(Uri uri, int gridSize) throws IOException {
+        // First decode with inJustDecodeBounds=true to check dimensions
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream imageStream = openStream(uri)) {
+            BitmapFactory.decodeStream(imageStream, null, options);
+        }
+        checkCancelled();
+        int fullWidth = options.outWidth;
+        int fullHeight = options.outHeight;
+
+        // Stage 1: cheap low-resolution pass to find the code
+        options.inSampleSize = calculateInSampleSize(options, PREVIEW_SIZE, PREVIEW_SIZE);
+        options.inJustDecodeBounds = false;
+        Bitmap preview = decodeStream(uri, options);
+        readLuminance(preview);
+        boolean located = locator.locate(frame, gridSize, codeBounds);
+        float scaleX = fullWidth / (float) preview.getWidth();
+        float scaleY = fullHeight / (float) preview.getHeight();
+        bitmapPool.release(preview);
+        checkCancelled();
+
+        if (!located) {
+            // The preview decode left its own size in options; plan from the original's
+            options.outWidth = fullWidth;
+            options.outHeight = fullHeight;
+            options.inSampleSize = sampleSizeFor(fullWidth, fullHeight, Math.max(MAX_WIDTH, MAX_HEIGHT),
+                    MAX_WIDTH * MAX_HEIGHT);
+            return decodeStream(uri, options);
+        }
+
+        // Stage 2: decode just the code, with half a cell of margin, from the original
+        int margin = Math.max(codeBounds.width(), codeBounds.height()) / (2 * gridSize);
+        Rect region = new Rect(
+                Math.max(0, (int) ((codeBounds.left - margin) * scaleX)),
+                Math.max(0, (int) ((codeBounds.top - margin) * scaleY)),
+                Math.min(fullWidth, (int) Math.ceil((codeBounds.right + margin) * scaleX)),
+                Math.min(fullHeight, (int) Math.ceil((codeBounds.bottom + margin) * scaleY)));
+        BitmapFactory.Options regionOptions = new BitmapFactory.Options();
+        regionOptions.outWidth = region.width();
+        regionOptions.outHeight = region.height();
+        regionOptions.inSampleSize = calculateInSampleSize(regionOptions, MAX_WIDTH, MAX_HEIGHT);
+        // Region output isn't reused as inBitmap (its size rounding is decoder-specific), but
+        // a mutable result can go back to the pool afterwards
+        regionOptions.inMutable = true;
+
+        Bitmap bitmap;
+        try (InputStream imageStream = openStream(uri)) {
+            BitmapRegionDecoder regionDecoder = newRegionDecoder(imageStream);
+            try {
+                bitmap = regionDecoder.decodeRegion(region, regionOptions);
+            } finally {
+                regionDecoder.recycle();
+            }
+        }
+        if (bitmap == null) {
+            throw new IOException("Unsupported image: " + uri);
+        }
+        bitmapPool.adopt(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Loads the whole image sampled down to roughly {@code maxSide} on its long side and at
+     * most {@code maxPixels} in total. The limit applies to the size actually decoded: JPEG
+     * decoders round the sample size down to a power of two, so a sample size of 3 would
+     * still load a 48 MP photo at 4000 x 3000.
+     */
+    private Bitmap loadSampled(Uri uri, int maxSide, int maxPixels) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream imageStream = openStream(uri)) {
+            BitmapFactory.decodeStream(imageStream, null, options);
+        }
+        checkCancelled();
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight, maxSide, maxPixels);
+        options.inJustDecodeBounds = false;
+        return decodeStream(uri, options);
+    }
+
+    /**
+     * Power-of-two sample size that brings a {@code width} x {@code height} image down to
+     * roughly {@code maxSide} on its long side and at most {@code maxPixels} as actually decoded.
+     */
+    static int sampleSizeFor(int width, int height, int maxSide, int maxPixels) {
+        int sample = Integer.highestOneBit(Math.max(1, calculateInSampleSize(width, height, maxSide, maxSide)));
+        while ((long) ((width + sample - 1) / sample) * ((height + sample - 1) / sample) > maxPixels) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoder(InputStream stream) throws IOException {
+        // The non-deprecated overload only exists from API 31
+        return BitmapRegionDecoder.newInstance(stream, false);
+    }
+
+    /**
+     * Decodes into a pooled bitmap when one is large enough. {@code options} must carry the
+     * image's bounds and the sample size.
+     */
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+        // JPEG decoders round the sample size down to a power of two, so plan for that
+        int sample = Integer.highestOneBit(Math.max(1, options.inSampleSize));
+        bitmapPool.prepareDecode(options,
+                (options.outWidth + sample - 1) / sample, (options.outHeight + sample - 1) / sample);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStreamOnce(uri, options);
+        } catch (IllegalArgumentException e) {
+            // The decoder refused the pooled bitmap; allocate instead
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            bitmapPool.putBack(options);
+            bitmap = decodeStreamOnce(uri, options);
+        } finally {
+            options.inBitmap = null;
+        }
+        if (bitmap == null) {
+            throw new IOException("Unsupported image: " + uri);
+        }
+        bitmapPool.adopt(bitmap);
+        return bitmap;
+    }
+
+    private Bitmap decodeStreamOnce(Uri uri, BitmapFactory.Options options) throws IOException {
+        try (InputStream imageStream = openStream(uri)) {
+            return BitmapFactory.decodeStream(imageStream, null, options);
+        }
+    }
+
+    /**
+     * Reads the clockwise rotation needed to show the image upright. Read from the content
+     * stream so it also works for URIs without a file path.
+     */
+    private int readExifRotation(Uri uri) throws IOException {
+        int orientation;
+        try (InputStream imageStream = openStream(uri)) {
+            orientation = new ExifInterface(imageStream).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
+        }
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    private InputStream openStream(Uri uri) throws IOException {
+        InputStream stream = contentResolver.openInputStream(uri);
+        if (stream == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        return stream;
+    }
+
+    /**
+     * Calculate an inSampleSize for use in a BitmapFactory.Options object when decoding
+     * bitmaps using the decode* methods from BitmapFactory. This implementation calculates
+     * the closest inSampleSize that will result in the final decoded bitmap having a width and
+     * height equal to or larger than the requested width and height.
+     */
+    public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
+        return calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+    }
+
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (height > reqHeight || width > reqWidth) {
+            // Calculate ratios of height and width to requested height and width
+            final int heightRatio = Math.round((float) height / (float) reqHeight);
+            final int widthRatio = Math.round((float) width / (float) reqWidth);
+
+            // Choose the smallest ratio as inSampleSize value, this will guarantee a final image
+            // with both dimensions larger than or equal to the requested height and width.
+            inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
+
+            // This offers some additional logic in case the image has a strange
+            // aspect ratio. For example, a panorama may have a much larger
+            // width than height. In these cases the total pixels might still
+            // end up being too large to fit comfortably in memory, so we should
+            // be more aggressive with sample down the image (=larger inSampleSize).
+            final float totalPixels = width * height;
+
+            // Anything more than 2x the requested pixels we'll sample down further
+            final float totalReqPixelsCap = reqWidth * reqHeight * 2;
+
+            while (totalPixels / (inSampleSize * inSampleSize) > totalReqPixelsCap) {
+                inSampleSize++;
+            }
+        }
+        return inSampleSize;
+    }
+
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    private void post(final int id, final StatusCallback callback, final Stage stage) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (id == generation) {
+                    callback.onProgress(stage);
+                }
+            }
+        });
+    }
+
+    private void postError(final int id, final StatusCallback callback, final Exception e) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (id == generation) {
+                    callback.onError(e);
+                }
+            }
+        });
+    }
+}
@@ -4,19 +4,18 @@ import android.Manifest;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.media.ExifInterface;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.view.View;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
@@ -27,28 +26,86 @@ import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.example.qrcodevariant.codec.BatchEncoder;
+import com.example.qrcodevariant.codec.BitBuffer;
+import com.example.qrcodevariant.codec.CellLevels;
+import com.example.qrcodevariant.codec.CodeEncoder;
+import com.example.qrcodevariant.codec.CodeFormat;
+import com.example.qrcodevariant.codec.CodeSpec;
+import com.example.qrcodevariant.codec.DecodedCode;
+import com.example.qrcodevariant.codec.ErrorCorrection;
+import com.example.qrcodevariant.codec.Metrics;
+import com.example.qrcodevariant.codec.ModuleMatrix;
+import com.example.qrcodevariant.codec.PngWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipOutputStream;
 
 public class MainActivity extends AppCompatActivity {
 
-    private static final int CAMERA_REQUEST_CODE = 100;
     private static final int CAMERA_PERMISSION_CODE = 101;
     private static final int GALLERY_REQUEST_CODE = 200;
+    private static final int GALLERY_MULTI_REQUEST_CODE = 201;
+    private static final int LIVE_SCAN_PERMISSION_CODE = 102;
+    private static final int BATCH_INPUT_REQUEST_CODE = 300;
+    private static final int BATCH_OUTPUT_REQUEST_CODE = 301;
 
     private EditText editTextBinary;
-    private Spinner spinnerGridSizeEncode, spinnerGridSizeDecode;
-    private Button buttonGenerate, buttonCapture, buttonSelectFromGallery;
+    private Spinner spinnerGridSizeEncode, spinnerGridSizeDecode, spinnerEccEncode, spinnerEccDecode;
+    private Spinner spinnerLevelsEncode, spinnerLevelsDecode;
+    private Button buttonGenerate, buttonCapture, buttonSelectFromGallery, buttonLiveScan, buttonBatchGenerate, buttonScanAll;
+    private PreviewView previewViewLive;
     private ImageView imageViewCode, imageViewCaptured;
-    private TextView textViewDecoded;
+    private TextView textViewDecoded, textViewMetrics;
+
+    // Encoder buffers, reused between presses
+    private final BitBuffer encodeBits = new BitBuffer();
+    private final BitBuffer encodeCells = new BitBuffer();
+    private final ModuleMatrix encodeModules = new ModuleMatrix();
+    private int[] encodePixels = new int[0];
+    private final PngWriter pngWriter = new PngWriter();
+
+    // Debug overlay refresh period while metrics are shown
+    private static final long METRICS_REFRESH_MS = 500;
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final Runnable metricsRefresh = new Runnable() {
+        @Override
+        public void run() {
+            textViewMetrics.setText(Metrics.summary() + decodePipeline.getCache() + "\n" + bitmapPool);
+            metricsHandler.postDelayed(this, METRICS_REFRESH_MS);
+        }
+    };
+
+    // Shared by the generator, the decode pipeline and both image views
+    private final BitmapPool bitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+
+    private CameraScanner cameraScanner;
+    private DecodePipeline decodePipeline;
+    private boolean liveScanning = false;
+    // Set for Capture Code: the scan stops at its first fused result
+    private boolean captureOnce = false;
 
-    private int blockSize = 100; // Define block size (adjust as needed)
+    // Batch generation state: the picked input file and the code settings chosen when it was picked
+    private final ExecutorService batchExecutor = Executors.newSingleThreadExecutor();
+    private Uri batchInputUri;
+    private CodeSpec batchSpec;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,30 +116,63 @@ public class MainActivity extends AppCompatActivity {
         editTextBinary = findViewById(R.id.editTextBinary);
         spinnerGridSizeEncode = findViewById(R.id.spinnerGridSizeEncode);
         spinnerGridSizeDecode = findViewById(R.id.spinnerGridSizeDecode);
+        spinnerEccEncode = findViewById(R.id.spinnerEccEncode);
+        spinnerEccDecode = findViewById(R.id.spinnerEccDecode);
+        spinnerLevelsEncode = findViewById(R.id.spinnerLevelsEncode);
+        spinnerLevelsDecode = findViewById(R.id.spinnerLevelsDecode);
         buttonGenerate = findViewById(R.id.buttonGenerate);
+        buttonBatchGenerate = findViewById(R.id.buttonBatchGenerate);
         buttonCapture = findViewById(R.id.buttonCapture);
         buttonSelectFromGallery = findViewById(R.id.buttonSelectFromGallery);
+        buttonLiveScan = findViewById(R.id.buttonLiveScan);
+        buttonScanAll = findViewById(R.id.buttonScanAll);
+        previewViewLive = findViewById(R.id.previewViewLive);
         imageViewCode = findViewById(R.id.imageViewCode);
         imageViewCaptured = findViewById(R.id.imageViewCaptured);
         textViewDecoded = findViewById(R.id.textViewDecoded);
+        textViewMetrics = findViewById(R.id.textViewMetrics);
 
-        // Setup spinner with grid sizes from res/values/strings.xml
-        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(
+        // Setup spinner with every supported grid size
+        List<String> gridSizes = new ArrayList<>();
+        for (int size = CodeFormat.MIN_GRID_SIZE; size <= CodeFormat.MAX_GRID_SIZE; size++) {
+            gridSizes.add(String.valueOf(size));
+        }
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(
                 this,
-                R.array.grid_sizes,
-                android.R.layout.simple_spinner_item
+                android.R.layout.simple_spinner_item,
+                gridSizes
         );
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         spinnerGridSizeEncode.setAdapter(adapter);
         spinnerGridSizeDecode.setAdapter(adapter);
 
+        // Setup spinners with the error-correction modes, in ErrorCorrection order
+        ArrayAdapter<CharSequence> eccAdapter = ArrayAdapter.createFromResource(
+                this,
+                R.array.ecc_modes,
+                android.R.layout.simple_spinner_item
+        );
+        eccAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerEccEncode.setAdapter(eccAdapter);
+        spinnerEccDecode.setAdapter(eccAdapter);
+
+        // Setup spinners with the grey levels per cell, in CellLevels order
+        ArrayAdapter<CharSequence> levelsAdapter = ArrayAdapter.createFromResource(
+                this,
+                R.array.cell_levels,
+                android.R.layout.simple_spinner_item
+        );
+        levelsAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerLevelsEncode.setAdapter(levelsAdapter);
+        spinnerLevelsDecode.setAdapter(levelsAdapter);
+
         // Handle Generate Code button click (Encoding)
         buttonGenerate.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 String binaryInput = editTextBinary.getText().toString().trim();
-                int gridSize = Integer.parseInt(spinnerGridSizeEncode.getSelectedItem().toString());
-                int requiredLength = (gridSize - 2) * (gridSize - 2);
+                CodeSpec spec = encodeSpec();
+                int requiredLength = spec.payloadBits();
 
                 if (binaryInput.length() != requiredLength) {
                     Toast.makeText(
@@ -92,26 +182,47 @@ public class MainActivity extends AppCompatActivity {
                     ).show();
                     return;
                 }
+                try {
+                    encodeBits.setBinaryString(binaryInput);
+                } catch (IllegalArgumentException e) {
+                    Toast.makeText(MainActivity.this, "Binary input may only contain 0 and 1.", Toast.LENGTH_SHORT).show();
+                    return;
+                }
 
-                // Generate the QR code bitmap
-                Bitmap generatedBitmap = generateQRCodeVariant(binaryInput, gridSize);
+                // Add the parity bits, then generate the QR code bitmap
+                spec.getErrorCorrection().encode(encodeBits, spec.cellBits(), encodeCells);
+                Bitmap generatedBitmap = generateQRCodeVariant(encodeCells, spec.getGridSize(), spec.getCellLevels());
 
                 // Display in ImageView
-                imageViewCode.setImageBitmap(generatedBitmap);
+                swapImage(imageViewCode, generatedBitmap);
 
                 // Save to gallery
                 String fileName = "QRCodeVariant_" + System.currentTimeMillis();
-                saveBitmapToGallery(generatedBitmap, fileName);
+                saveCodeToGallery(encodeModules, CodeFormat.blockSizeFor(spec.getGridSize()), fileName);
             }
         });
 
 
-        // Handle Capture Code button click (Decoding from Camera)
+        // Handle Batch Generate button click: pick the input file, then where to save the ZIP
+        buttonBatchGenerate.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                batchSpec = encodeSpec();
+                Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                intent.setType("text/*");
+                startActivityForResult(intent, BATCH_INPUT_REQUEST_CODE);
+            }
+        });
+
+        // Handle Capture Code button click (one fused result from the camera stream)
         buttonCapture.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                // Check for camera permission
-                if (ContextCompat.checkSelfPermission(
+                if (liveScanning) {
+                    // Already streaming: stop at the next result instead
+                    captureOnce = true;
+                } else if (ContextCompat.checkSelfPermission(
                         MainActivity.this,
                         Manifest.permission.CAMERA
                 ) != PackageManager.PERMISSION_GRANTED) {
@@ -121,33 +232,158 @@ public class MainActivity extends AppCompatActivity {
                             CAMERA_PERMISSION_CODE
                     );
                 } else {
-                    openCamera();
+                    startLiveScan(true);
                 }
             }
         });
 
+        // Handle Live Scan button click (continuous decoding from the camera stream)
+        cameraScanner = new CameraScanner(this);
+        decodePipeline = new DecodePipeline(getContentResolver(), bitmapPool);
+        buttonLiveScan.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (liveScanning) {
+                    stopLiveScan();
+                } else if (ContextCompat.checkSelfPermission(
+                        MainActivity.this,
+                        Manifest.permission.CAMERA
+                ) != PackageManager.PERMISSION_GRANTED) {
+                    ActivityCompat.requestPermissions(
+                            MainActivity.this,
+                            new String[]{Manifest.permission.CAMERA},
+                            LIVE_SCAN_PERMISSION_CODE
+                    );
+                } else {
+                    startLiveScan(false);
+                }
+            }
+        });
+
+        // Keep a running live scan in sync with the decode grid size, error correction and levels
+        AdapterView.OnItemSelectedListener decodeSpecListener = new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                cameraScanner.setCodeSpec(decodeSpec());
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        };
+        spinnerGridSizeDecode.setOnItemSelectedListener(decodeSpecListener);
+        spinnerEccDecode.setOnItemSelectedListener(decodeSpecListener);
+        spinnerLevelsDecode.setOnItemSelectedListener(decodeSpecListener);
+
+        // Long-press the result to record metrics and show them; tap them to export a JSON snapshot
+        textViewDecoded.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                setMetricsOverlay(!Metrics.isEnabled());
+                return true;
+            }
+        });
+        textViewMetrics.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                Intent share = new Intent(Intent.ACTION_SEND);
+                share.setType("application/json");
+                share.putExtra(Intent.EXTRA_TEXT, Metrics.toJson());
+                startActivity(Intent.createChooser(share, "Export metrics"));
+            }
+        });
+
         // Handle Select from Gallery button click (Decoding from Gallery)
         buttonSelectFromGallery.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                openGallery();
+                openGallery(GALLERY_REQUEST_CODE);
             }
         });
+
+        // Handle Decode All button click (every code in one gallery photo)
+        buttonScanAll.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                openGallery(GALLERY_MULTI_REQUEST_CODE);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        metricsHandler.removeCallbacks(metricsRefresh);
+        cameraScanner.shutdown();
+        decodePipeline.shutdown();
+        batchExecutor.shutdown();
+        bitmapPool.clear();
+        super.onDestroy();
     }
 
-    // Opens the camera using an intent (returns a thumbnail)
-    private void openCamera() {
-        Intent cameraIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-        if (cameraIntent.resolveActivity(getPackageManager()) != null) {
-            startActivityForResult(cameraIntent, CAMERA_REQUEST_CODE);
+    private void setMetricsOverlay(boolean on) {
+        Metrics.setEnabled(on);
+        metricsHandler.removeCallbacks(metricsRefresh);
+        if (on) {
+            textViewMetrics.setVisibility(View.VISIBLE);
+            metricsRefresh.run();
+        } else {
+            textViewMetrics.setVisibility(View.GONE);
+        }
+    }
+
+    // Starts streaming camera frames to the decoder; results arrive on the main thread.
+    // With once set, the scan stops after the first result, as Capture Code does
+    private void startLiveScan(boolean once) {
+        previewViewLive.setVisibility(View.VISIBLE);
+        buttonLiveScan.setText("Stop Live Scan");
+        liveScanning = true;
+        captureOnce = once;
+        cameraScanner.start(this, previewViewLive, decodeSpec(), new CameraScanner.Listener() {
+            @Override
+            public void onCodeScanned(String binary, int correctedErrors) {
+                showDecoded(binary, correctedErrors);
+                if (captureOnce) {
+                    stopLiveScan();
+                }
+            }
+        });
+    }
+
+    private CodeSpec encodeSpec() {
+        return new CodeSpec(
+                Integer.parseInt(spinnerGridSizeEncode.getSelectedItem().toString()),
+                ErrorCorrection.values()[spinnerEccEncode.getSelectedItemPosition()],
+                CellLevels.values()[spinnerLevelsEncode.getSelectedItemPosition()]);
+    }
+
+    private CodeSpec decodeSpec() {
+        return new CodeSpec(
+                Integer.parseInt(spinnerGridSizeDecode.getSelectedItem().toString()),
+                ErrorCorrection.values()[spinnerEccDecode.getSelectedItemPosition()],
+                CellLevels.values()[spinnerLevelsDecode.getSelectedItemPosition()]);
+    }
+
+    private void showDecoded(String binary, int correctedErrors) {
+        if (correctedErrors > 0) {
+            textViewDecoded.setText("Decoded Binary: " + binary + " (corrected " + correctedErrors + " errors)");
+        } else {
+            textViewDecoded.setText("Decoded Binary: " + binary);
         }
     }
 
+    private void stopLiveScan() {
+        cameraScanner.stop();
+        previewViewLive.setVisibility(View.GONE);
+        buttonLiveScan.setText("Start Live Scan");
+        liveScanning = false;
+        captureOnce = false;
+    }
+
     // Opens the gallery for the user to pick an image
-    private void openGallery() {
+    private void openGallery(int requestCode) {
         Intent galleryIntent = new Intent(Intent.ACTION_PICK,
                 MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
-        startActivityForResult(galleryIntent, GALLERY_REQUEST_CODE);
+        startActivityForResult(galleryIntent, requestCode);
     }
 
     // Handle camera permission result
@@ -156,173 +392,188 @@ public class MainActivity extends AppCompatActivity {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
         if (requestCode == CAMERA_PERMISSION_CODE) {
             if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                openCamera();
+                startLiveScan(true);
+            } else {
+                Toast.makeText(this, "Camera permission is required to capture a code", Toast.LENGTH_SHORT).show();
+            }
+        } else if (requestCode == LIVE_SCAN_PERMISSION_CODE) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                startLiveScan(false);
             } else {
-                Toast.makeText(this, "Camera permission is required to capture image", Toast.LENGTH_SHORT).show();
+                Toast.makeText(this, "Camera permission is required to scan", Toast.LENGTH_SHORT).show();
             }
         }
     }
 
-    // Process the captured or selected image
+    // Process the selected image or batch file
     @Override
     protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
 
-        // If the user captured a photo with the camera
-        if (requestCode == CAMERA_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
-            Bundle extras = data.getExtras();
-            Bitmap capturedImage = (Bitmap) extras.get("data");
-            if (capturedImage != null) {
-                imageViewCaptured.setImageBitmap(capturedImage);
-
-                int gridSize = Integer.parseInt(spinnerGridSizeDecode.getSelectedItem().toString());
-                String decodedBinary = decodeQRCodeVariant(capturedImage, gridSize);
-                textViewDecoded.setText("Decoded Binary: " + decodedBinary);
+        // If the user selected an image from the gallery
+        if (requestCode == GALLERY_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
+            Uri selectedImageUri = data.getData();
+            if (selectedImageUri != null) {
+                // Loading, EXIF lookup and decoding all run on the pipeline's worker thread
+                decodePipeline.submit(selectedImageUri, decodeSpec(), decodeCallback);
             }
         }
-        // If the user selected an image from the gallery
-        else if (requestCode == GALLERY_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
+        // If the user picked a photo holding several codes
+        else if (requestCode == GALLERY_MULTI_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
             Uri selectedImageUri = data.getData();
             if (selectedImageUri != null) {
-                try {
-                    // Load and rotate the image if needed
-                    Bitmap selectedImage = handleSamplingAndRotationBitmap(selectedImageUri);
-                    imageViewCaptured.setImageBitmap(selectedImage);
-
-                    int gridSize = Integer.parseInt(spinnerGridSizeDecode.getSelectedItem().toString());
-                    String decodedBinary = decodeQRCodeVariant(selectedImage, gridSize);
-                    textViewDecoded.setText("Decoded Binary: " + decodedBinary);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Toast.makeText(this, "Failed to load image.", Toast.LENGTH_SHORT).show();
-                }
+                decodePipeline.submitAll(selectedImageUri, decodeSpec(), multiDecodeCallback);
             }
         }
+        // Batch input picked: ask where to write the archive
+        else if (requestCode == BATCH_INPUT_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
+            batchInputUri = data.getData();
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("application/zip");
+            intent.putExtra(Intent.EXTRA_TITLE, "QRCodeVariants_" + System.currentTimeMillis() + ".zip");
+            startActivityForResult(intent, BATCH_OUTPUT_REQUEST_CODE);
+        }
+        else if (requestCode == BATCH_OUTPUT_REQUEST_CODE && resultCode == RESULT_OK && data != null
+                && batchInputUri != null && data.getData() != null) {
+            runBatch(batchInputUri, data.getData(), batchSpec);
+        }
     }
 
-    /**
-     * This method handles the image rotation and sampling to avoid out of memory issues
-     * @param selectedImage The URI of the selected image
-     * @return A rotated bitmap based on EXIF data
-     */
-    public Bitmap handleSamplingAndRotationBitmap(Uri selectedImage) throws IOException {
-        int MAX_HEIGHT = 1024;
-        int MAX_WIDTH = 1024;
-
-        // First decode with inJustDecodeBounds=true to check dimensions
-        final BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        InputStream imageStream = getContentResolver().openInputStream(selectedImage);
-        BitmapFactory.decodeStream(imageStream, null, options);
-        imageStream.close();
-
-        // Calculate inSampleSize
-        options.inSampleSize = calculateInSampleSize(options, MAX_WIDTH, MAX_HEIGHT);
-
-        // Decode bitmap with inSampleSize set
-        options.inJustDecodeBounds = false;
-        imageStream = getContentResolver().openInputStream(selectedImage);
-        Bitmap img = BitmapFactory.decodeStream(imageStream, null, options);
-        imageStream.close();
-
-        // Rotate the image if needed
-        return rotateImageIfRequired(img, selectedImage);
+    // Streams every payload of the input file into a single ZIP off the main thread
+    private void runBatch(final Uri input, final Uri output, final CodeSpec spec) {
+        buttonBatchGenerate.setEnabled(false);
+        Toast.makeText(this, "Generating codes...", Toast.LENGTH_SHORT).show();
+        batchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try (InputStream in = getContentResolver().openInputStream(input);
+                     OutputStream out = getContentResolver().openOutputStream(output)) {
+                    if (in == null || out == null) {
+                        throw new IOException("Cannot open batch files");
+                    }
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                    ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out));
+                    BatchEncoder.Result result = new BatchEncoder(spec, new PngWriter()).encode(reader, zip);
+                    zip.finish();
+                    zip.flush();
+                    message = String.format(Locale.US, "Encoded %d codes (%d skipped) at %.1f codes/s",
+                            result.encoded, result.skipped, result.codesPerSecond());
+                } catch (IOException | InterruptedException e) {
+                    e.printStackTrace();
+                    message = "Batch generation failed.";
+                }
+
+                final String finalMessage = message;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        buttonBatchGenerate.setEnabled(true);
+                        Toast.makeText(MainActivity.this, finalMessage, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
     }
 
-    /**
-     * Calculate an inSampleSize for use in a BitmapFactory.Options object when decoding
-     * bitmaps using the decode* methods from BitmapFactory. This implementation calculates
-     * the closest inSampleSize that will result in the final decoded bitmap having a width and
-     * height equal to or larger than the requested width and height.
-     */
-    public static int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        // Raw height and width of image
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-
-        if (height > reqHeight || width > reqWidth) {
-            // Calculate ratios of height and width to requested height and width
-            final int heightRatio = Math.round((float) height / (float) reqHeight);
-            final int widthRatio = Math.round((float) width / (float) reqWidth);
-
-            // Choose the smallest ratio as inSampleSize value, this will guarantee a final image
-            // with both dimensions larger than or equal to the requested height and width.
-            inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
-
-            // This offers some additional logic in case the image has a strange
-            // aspect ratio. For example, a panorama may have a much larger
-            // width than height. In these cases the total pixels might still
-            // end up being too large to fit comfortably in memory, so we should
-            // be more aggressive with sample down the image (=larger inSampleSize).
-            final float totalPixels = width * height;
-
-            // Anything more than 2x the requested pixels we'll sample down further
-            final float totalReqPixelsCap = reqWidth * reqHeight * 2;
-
-            while (totalPixels / (inSampleSize * inSampleSize) > totalReqPixelsCap) {
-                inSampleSize++;
+    // Receives pipeline progress and results on the main thread
+    private final DecodePipeline.Callback decodeCallback = new DecodePipeline.Callback() {
+        @Override
+        public void onProgress(DecodePipeline.Stage stage) {
+            textViewDecoded.setText(stage == DecodePipeline.Stage.LOADING ? "Loading image..." : "Decoding...");
+        }
+
+        @Override
+        public void onResult(Bitmap bitmap, int rotationDegrees, String binary, int correctedErrors) {
+            showRotated(imageViewCaptured, bitmap, rotationDegrees);
+            showDecoded(binary, correctedErrors);
+        }
+
+        @Override
+        public void onNotFound(Bitmap bitmap, int rotationDegrees) {
+            showRotated(imageViewCaptured, bitmap, rotationDegrees);
+            textViewDecoded.setText("Decoded Binary:");
+            Toast.makeText(MainActivity.this, "No code found in image.", Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            e.printStackTrace();
+            textViewDecoded.setText("Decoded Binary:");
+            Toast.makeText(MainActivity.this, "Failed to load image.", Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    // Receives every code of a multi-code photo on the main thread
+    private final DecodePipeline.MultiCallback multiDecodeCallback = new DecodePipeline.MultiCallback() {
+        @Override
+        public void onProgress(DecodePipeline.Stage stage) {
+            decodeCallback.onProgress(stage);
+        }
+
+        @Override
+        public void onResults(Bitmap bitmap, int rotationDegrees, List<DecodedCode> codes) {
+            showRotated(imageViewCaptured, bitmap, rotationDegrees);
+            StringBuilder text = new StringBuilder("Decoded ").append(codes.size()).append(" codes:");
+            for (int i = 0; i < codes.size(); i++) {
+                DecodedCode code = codes.get(i);
+                text.append(String.format(Locale.US, "\n#%d at (%d, %d)-(%d, %d): %s",
+                        i + 1, code.bounds.left, code.bounds.top, code.bounds.right, code.bounds.bottom,
+                        code.payload.toBinaryString()));
+                if (code.correctedErrors > 0) {
+                    text.append(" (corrected ").append(code.correctedErrors).append(" errors)");
+                }
             }
+            textViewDecoded.setText(text);
         }
-        return inSampleSize;
-    }
 
-    /**
-     * Rotate an image if required.
-     * @param img The image bitmap
-     * @param selectedImage Image URI
-     * @return The resulted Bitmap after handling rotation
-     */
-    private Bitmap rotateImageIfRequired(Bitmap img, Uri selectedImage) throws IOException {
-        String[] projection = {MediaStore.Images.Media.DATA};
-        Cursor cursor = getContentResolver().query(selectedImage, projection, null, null, null);
-
-        if (cursor == null) {
-            ExifInterface ei = new ExifInterface(getContentResolver().openInputStream(selectedImage));
-            int orientation = ei.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
-            return rotateImage(img, getRotationFromOrientation(orientation));
-        } else {
-            int column_index = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-            cursor.moveToFirst();
-            String path = cursor.getString(column_index);
-            cursor.close();
-
-            ExifInterface ei = new ExifInterface(path);
-            int orientation = ei.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_UNDEFINED);
-            return rotateImage(img, getRotationFromOrientation(orientation));
+        @Override
+        public void onError(Exception e) {
+            decodeCallback.onError(e);
         }
-    }
+    };
 
     /**
-     * Get rotation in degrees from EXIF orientation constant
+     * Shows the bitmap upright by rotating it in the view's image matrix rather than
+     * creating a rotated copy.
      */
-    private static int getRotationFromOrientation(int orientation) {
-        switch (orientation) {
-            case ExifInterface.ORIENTATION_ROTATE_90:
-                return 90;
-            case ExifInterface.ORIENTATION_ROTATE_180:
-                return 180;
-            case ExifInterface.ORIENTATION_ROTATE_270:
-                return 270;
-            default:
-                return 0;
+    private void showRotated(ImageView view, Bitmap bitmap, int degrees) {
+        swapImage(view, bitmap);
+        if (degrees == 0) {
+            view.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            return;
         }
-    }
 
-    /**
-     * Rotate the given bitmap with specified degrees
-     */
-    private static Bitmap rotateImage(Bitmap img, int degree) {
-        if (degree == 0) return img;
+        boolean swapped = degrees == 90 || degrees == 270;
+        float uprightWidth = swapped ? bitmap.getHeight() : bitmap.getWidth();
+        float uprightHeight = swapped ? bitmap.getWidth() : bitmap.getHeight();
+        float scale = Math.min(view.getWidth() / uprightWidth, view.getHeight() / uprightHeight);
 
         Matrix matrix = new Matrix();
-        matrix.postRotate(degree);
-        Bitmap rotatedImg = Bitmap.createBitmap(img, 0, 0, img.getWidth(), img.getHeight(), matrix, true);
-        img.recycle();
-        return rotatedImg;
+        matrix.setTranslate(-bitmap.getWidth() / 2f, -bitmap.getHeight() / 2f);
+        matrix.postRotate(degrees);
+        matrix.postScale(scale, scale);
+        matrix.postTranslate(view.getWidth() / 2f, view.getHeight() / 2f);
+        view.setScaleType(ImageView.ScaleType.MATRIX);
+        view.setImageMatrix(matrix);
+    }
+
+    // Shows the bitmap and hands the one it replaces back to the pool
+    private void swapImage(ImageView view, Bitmap bitmap) {
+        Drawable previous = view.getDrawable();
+        view.setImageBitmap(bitmap);
+        if (previous instanceof BitmapDrawable) {
+            Bitmap old = ((BitmapDrawable) previous).getBitmap();
+            if (old != bitmap) {
+                bitmapPool.release(old);
+            }
+        }
     }
 
-    private void saveBitmapToGallery(Bitmap bitmap, String fileName) {
+    // Saves the code as a 1-bit PNG written straight from its modules; no bitmap is compressed
+    private void saveCodeToGallery(ModuleMatrix modules, int blockSize, String fileName) {
+        long start = Metrics.start();
         OutputStream fos;
         try {
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.Q) {
@@ -334,8 +585,11 @@ public class MainActivity extends AppCompatActivity {
                 Uri uri = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
                 if (uri != null) {
                     fos = getContentResolver().openOutputStream(uri);
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-                    if (fos != null) fos.close();
+                    if (fos != null) {
+                        fos = new BufferedOutputStream(fos);
+                        pngWriter.write(modules, blockSize, fos);
+                        fos.close();
+                    }
                     Toast.makeText(this, "Saved to gallery!", Toast.LENGTH_SHORT).show();
                 }
             } else {
@@ -347,8 +601,8 @@ public class MainActivity extends AppCompatActivity {
                 if (!file.exists()) file.mkdirs();
 
                 File image = new File(file, fileName + ".png");
-                fos = new FileOutputStream(image);
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
+                fos = new BufferedOutputStream(new FileOutputStream(image));
+                pngWriter.write(modules, blockSize, fos);
                 fos.flush();
                 fos.close();
 
@@ -364,116 +618,29 @@ public class MainActivity extends AppCompatActivity {
             e.printStackTrace();
             Toast.makeText(this, "Failed to save image.", Toast.LENGTH_SHORT).show();
         }
+        Metrics.stop(Metrics.Stage.SAVE, start);
     }
 
 
-    // Generates the QR code variant bitmap with visible grid lines from the binary string and grid size
-    private Bitmap generateQRCodeVariant(String binary, int gridSize) {
-        int width = gridSize * blockSize;
-        int height = gridSize * blockSize;
-
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        Paint paint = new Paint();
-
-        // 1) Fill the background with white
-        canvas.drawColor(Color.WHITE);
+    // Generates the QR code variant bitmap with visible grid lines from the payload bits, grid size
+    // and grey levels per cell
+    private Bitmap generateQRCodeVariant(BitBuffer bits, int gridSize, CellLevels levels) {
+        // Large grids get smaller blocks so the bitmap stays bounded
+        int blockSize = CodeFormat.blockSizeFor(gridSize);
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
 
-        // 2) Draw the alternating border (first row and first column)
-        for (int col = 0; col < gridSize; col++) {
-            paint.setColor((col % 2 == 0) ? Color.BLACK : Color.WHITE);
-            canvas.drawRect(col * blockSize, 0, (col + 1) * blockSize, blockSize, paint);
-        }
-        for (int row = 0; row < gridSize; row++) {
-            paint.setColor((row % 2 == 0) ? Color.BLACK : Color.WHITE);
-            canvas.drawRect(0, row * blockSize, blockSize, (row + 1) * blockSize, paint);
+        // Render straight into the reused pixel array, then hand it to the bitmap in one call
+        long start = Metrics.start();
+        CodeEncoder.encodeModules(bits, gridSize, levels, encodeModules);
+        if (encodePixels.length < side * side) {
+            encodePixels = new int[side * side];
         }
+        CodeEncoder.render(encodeModules, blockSize, encodePixels);
 
-        // 3) Fill the central region with the binary data
-        int index = 0;
-        for (int row = 1; row < gridSize - 1; row++) {
-            for (int col = 1; col < gridSize - 1; col++) {
-                if (index < binary.length()) {
-                    char bit = binary.charAt(index);
-                    paint.setColor(bit == '1' ? Color.BLACK : Color.WHITE);
-                    canvas.drawRect(col * blockSize, row * blockSize,
-                            (col + 1) * blockSize, (row + 1) * blockSize, paint);
-                    index++;
-                }
-            }
-        }
-
-        // 4) Draw grid lines for clear block boundaries
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(3);
-        for (int i = 0; i <= gridSize; i++) {
-            int y = i * blockSize;
-            canvas.drawLine(0, y, width, y, paint);
-        }
-        for (int i = 0; i <= gridSize; i++) {
-            int x = i * blockSize;
-            canvas.drawLine(x, 0, x, height, paint);
-        }
-        paint.setStyle(Paint.Style.FILL);
-
+        // Every pixel is overwritten, so a pooled bitmap needs no clearing
+        Bitmap bitmap = bitmapPool.get(side, side, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(encodePixels, 0, side, 0, 0, side, side);
+        Metrics.stop(Metrics.Stage.ENCODE, start);
         return bitmap;
     }
-
-    // Decodes the QR code variant by reading the central region of the bitmap using the provided grid size
-    private String decodeQRCodeVariant(Bitmap bitmap, int gridSize) {
-        if (bitmap == null || bitmap.getWidth() == 0 || bitmap.getHeight() == 0) {
-            return "No image to decode.";
-        }
-
-        int blockWidth = bitmap.getWidth() / gridSize;
-        int blockHeight = bitmap.getHeight() / gridSize;
-        StringBuilder binaryResult = new StringBuilder();
-
-        // Process only the central area (excluding the border row/column)
-        for (int row = 1; row < gridSize - 1; row++) {
-            for (int col = 1; col < gridSize - 1; col++) {
-                int startX = col * blockWidth;
-                int startY = row * blockHeight;
-                binaryResult.append(getBlockValue(bitmap, startX, startY, blockWidth, blockHeight));
-            }
-        }
-        return binaryResult.toString();
-    }
-
-    /**
-     * Samples the center region of a block to determine whether it's mostly black (returns '1')
-     * or white (returns '0'), skipping the outer edges where grid lines may be drawn.
-     */
-    private char getBlockValue(Bitmap bitmap, int startX, int startY, int blockWidth, int blockHeight) {
-        int blackCount = 0;
-        int whiteCount = 0;
-
-        int innerPadding = (int) (Math.min(blockWidth, blockHeight) * 0.2);
-        int sampleStartX = startX + innerPadding;
-        int sampleStartY = startY + innerPadding;
-        int sampleEndX = startX + blockWidth - innerPadding;
-        int sampleEndY = startY + blockHeight - innerPadding;
-
-        int samplePoints = 0;
-
-        for (int y = sampleStartY; y < sampleEndY; y += 5) {
-            for (int x = sampleStartX; x < sampleEndX; x += 5) {
-                if (x >= 0 && x < bitmap.getWidth() && y >= 0 && y < bitmap.getHeight()) {
-                    int pixel = bitmap.getPixel(x, y);
-                    int gray = (Color.red(pixel) + Color.green(pixel) + Color.blue(pixel)) / 3;
-                    if (gray < 128) {
-                        blackCount++;
-                    } else {
-                        whiteCount++;
-                    }
-                    samplePoints++;
-                }
-            }
-        }
-        if (samplePoints == 0) {
-            return '0';
-        }
-        return (blackCount > whiteCount) ? '1' : '0';
-    }
 }
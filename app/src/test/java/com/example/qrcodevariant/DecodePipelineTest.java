@@ -0,0 +1,31 @@
+package com.example.qrcodevariant;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecodePipelineTest {
+
+    // The whole-image fallback for photos whose preview shows no code
+    private static final int MAX_SIDE = 1024;
+    private static final int MAX_PIXELS = 1024 * 1024;
+
+    @Test
+    public void samplesLargePhotosDownToTheFallbackSize() {
+        // 12, 48 and 200 MP camera photos and a panorama, with the expected sample size
+        int[][] photos = {{4000, 3000, 4}, {8000, 6000, 8}, {16320, 12240, 16}, {12000, 2000, 8}};
+        for (int[] photo : photos) {
+            int sample = DecodePipeline.sampleSizeFor(photo[0], photo[1], MAX_SIDE, MAX_PIXELS);
+            assertEquals(photo[0] + "x" + photo[1], photo[2], sample);
+            long width = (photo[0] + sample - 1) / sample;
+            long height = (photo[1] + sample - 1) / sample;
+            assertTrue(width * height <= MAX_PIXELS);
+        }
+    }
+
+    @Test
+    public void leavesSmallImagesAlone() {
+        assertEquals(1, DecodePipeline.sampleSizeFor(800, 600, MAX_SIDE, MAX_PIXELS));
+    }
+}
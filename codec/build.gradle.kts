@@ -0,0 +1,39 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Synthetic-capture corpus and the accuracy/latency report that decodes it
+val stress: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+dependencies {
+    testImplementation(libs.junit)
+    testImplementation(stress.output)
+}
+
+// ./gradlew :codec:stressReport [--args="--samples 200 --grids 7,21,51 --ecc HAMMING_7_4"]
+tasks.register<JavaExec>("stressReport") {
+    group = "verification"
+    description = "Decodes the synthetic capture corpus and prints accuracy and latency per condition."
+    classpath = stress.runtimeClasspath
+    mainClass.set("com.example.qrcodevariant.codec.StressReport")
+    systemProperty("java.awt.headless", "true")
+}
+
+// ./gradlew :codec:jmh runs the suite in src/jmh; the gc profiler reports allocation per op
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,61 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.Random;
+
+/** Deterministic inputs for the benchmarks: random payloads and noisy photographed-like frames. */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    static BitBuffer randomPayload(int bits, long seed) {
+        Random random = new Random(seed);
+        BitBuffer payload = new BitBuffer();
+        payload.reset(bits);
+        for (int i = 0; i < bits; i++) {
+            payload.set(i, random.nextBoolean());
+        }
+        return payload;
+    }
+
+    /**
+     * Renders the code for {@code payload} into the middle three quarters of a square frame of
+     * {@code resolution} pixels, scaled with nearest-neighbour sampling, and adds Gaussian
+     * luminance noise of standard deviation {@code noise}.
+     *
+     * @param bounds receives the code's position in the frame
+     */
+    static LuminanceImage frame(BitBuffer payload, int gridSize, int resolution, int noise, long seed,
+                                Region bounds) {
+        ModuleMatrix modules = new ModuleMatrix();
+        CodeEncoder.encodeModules(payload, gridSize, modules);
+        int blockSize = CodeFormat.blockSizeFor(gridSize);
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
+        int[] code = new int[side * side];
+        CodeEncoder.render(modules, blockSize, code);
+
+        int codeSide = resolution * 3 / 4;
+        int offset = (resolution - codeSide) / 2;
+        bounds.set(offset, offset, offset + codeSide, offset + codeSide);
+
+        Random random = new Random(seed);
+        int[] argb = new int[resolution * resolution];
+        for (int y = 0; y < resolution; y++) {
+            for (int x = 0; x < resolution; x++) {
+                int gray = 255;
+                int u = x - offset;
+                int v = y - offset;
+                if (u >= 0 && u < codeSide && v >= 0 && v < codeSide) {
+                    gray = code[(v * side / codeSide) * side + u * side / codeSide] & 0xFF;
+                }
+                if (noise > 0) {
+                    gray = Math.max(0, Math.min(255, gray + (int) Math.round(random.nextGaussian() * noise)));
+                }
+                argb[y * resolution + x] = 0xFF000000 | gray << 16 | gray << 8 | gray;
+            }
+        }
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, resolution, resolution);
+        return image;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.qrcodevariant.codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost per frame over grid size, frame resolution and sensor noise. The located variant
+ * is the camera path: find the border, fit the outline, sample in perspective.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+
+    @Param({"5", "21", "51", "101"})
+    public int gridSize;
+
+    @Param({"320", "640", "1280"})
+    public int resolution;
+
+    /** Standard deviation of the added luminance noise. */
+    @Param({"0", "16", "40"})
+    public int noise;
+
+    private LuminanceImage frame;
+    private final Region bounds = new Region();
+    private CodeSpec codeSpec;
+    private final CodeDecoder decoder = new CodeDecoder();
+    private final CodeLocator locator = new CodeLocator();
+    private final GridSampler gridSampler = new GridSampler();
+    private final PerspectiveSampler perspectiveSampler = new PerspectiveSampler();
+    private final float[] corners = new float[8];
+    private final BitBuffer payload = new BitBuffer();
+
+    @Setup
+    public void setUp() {
+        codeSpec = new CodeSpec(gridSize, ErrorCorrection.NONE);
+        BitBuffer data = BenchmarkImages.randomPayload(codeSpec.cellBits(), gridSize);
+        frame = BenchmarkImages.frame(data, gridSize, resolution, noise, resolution + noise, bounds);
+        gridSampler.setBounds(bounds);
+    }
+
+    @Benchmark
+    public BitBuffer decodeAligned() {
+        decoder.decodePayload(frame, codeSpec, gridSampler, payload);
+        return payload;
+    }
+
+    @Benchmark
+    public BitBuffer locateAndDecode() {
+        if (locator.locateCorners(frame, gridSize, corners)) {
+            perspectiveSampler.setCorners(corners);
+            decoder.decodePayload(frame, codeSpec, perspectiveSampler, payload);
+        }
+        return payload;
+    }
+}
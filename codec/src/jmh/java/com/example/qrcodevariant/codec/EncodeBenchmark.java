@@ -0,0 +1,69 @@
+package com.example.qrcodevariant.codec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/** Cost of turning a payload into modules, pixels and a PNG at the app's block size. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EncodeBenchmark {
+
+    @Param({"5", "21", "51", "101"})
+    public int gridSize;
+
+    private BitBuffer payload;
+    private final ModuleMatrix modules = new ModuleMatrix();
+    private int blockSize;
+    private int[] pixels;
+    private final PngWriter pngWriter = new PngWriter();
+    private final CountingStream sink = new CountingStream();
+
+    @Setup
+    public void setUp() {
+        payload = BenchmarkImages.randomPayload(CodeFormat.dataBits(gridSize), gridSize);
+        blockSize = CodeFormat.blockSizeFor(gridSize);
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
+        pixels = new int[side * side];
+        CodeEncoder.encodeModules(payload, gridSize, modules);
+    }
+
+    @Benchmark
+    public int[] encodeAndRender() {
+        CodeEncoder.encodeModules(payload, gridSize, modules);
+        CodeEncoder.render(modules, blockSize, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public long writePng() throws IOException {
+        sink.count = 0;
+        pngWriter.write(modules, blockSize, sink);
+        return sink.count;
+    }
+
+    // Discards the PNG bytes but keeps their count, so the write can't be optimised away
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
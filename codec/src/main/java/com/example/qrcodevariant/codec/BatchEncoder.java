@@ -0,0 +1,231 @@
+package com.example.qrcodevariant.codec;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Encodes many payloads into one ZIP archive. The calling thread reads the input and writes the
+ * archive while a fixed pool encodes images in parallel; at most {@code 2 * threads} encoded
+ * images are held in memory at any time, however long the input is. Entries are written in
+ * input order and duplicate names are numbered in input order, so the same input always
+ * gives the same archive.
+ *
+ * <p>Input is line-delimited, in one of three forms:
+ * <ul>
+ *   <li>{@code name,payload} as in a two-column CSV, where the payload is exactly as many binary
+ *       digits as the grid holds after error correction. Lines whose payload isn't (a header
+ *       row, say) are counted as skipped.</li>
+ *   <li>Just such a binary payload; the entry is named after the line number.</li>
+ *   <li>Just an ID, for a plain list of IDs. Its payload is derived from the ID (see
+ *       {@link #payloadForId}) and the entry is named after it. A payload only holds a few bits
+ *       at small grid sizes, so different IDs can then share a code; the archive keeps the
+ *       mapping through the entry names.</li>
+ * </ul>
+ * Blank lines are ignored. A one-column list shouldn't have a header row, since it would be
+ * taken for an ID.
+ */
+public final class BatchEncoder {
+
+    /** Counts and timing of one batch. */
+    public static final class Result {
+        public final int encoded;
+        public final int skipped;
+        public final long elapsedNanos;
+
+        Result(int encoded, int skipped, long elapsedNanos) {
+            this.encoded = encoded;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double codesPerSecond() {
+            return elapsedNanos == 0 ? 0 : encoded * 1e9 / elapsedNanos;
+        }
+    }
+
+    private static final class Encoded {
+        final String name;
+        final byte[] data;
+
+        Encoded(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private final CodeSpec spec;
+    private final ImageWriter writer;
+    private final int threads;
+
+    public BatchEncoder(CodeSpec spec, ImageWriter writer, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.spec = spec;
+        this.writer = writer;
+        this.threads = threads;
+    }
+
+    /** Uses one encoding thread per available core. */
+    public BatchEncoder(CodeSpec spec, ImageWriter writer) {
+        this(spec, writer, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Encodes black/white codes. */
+    public BatchEncoder(int gridSize, ErrorCorrection errorCorrection, ImageWriter writer, int threads) {
+        this(new CodeSpec(gridSize, errorCorrection), writer, threads);
+    }
+
+    /** Encodes black/white codes, using one encoding thread per available core. */
+    public BatchEncoder(int gridSize, ErrorCorrection errorCorrection, ImageWriter writer) {
+        this(new CodeSpec(gridSize, errorCorrection), writer);
+    }
+
+    /**
+     * Encodes every valid line of {@code input} and writes one image entry per line to
+     * {@code zip}. The archive is not finished or closed.
+     */
+    public Result encode(BufferedReader input, ZipOutputStream zip) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        int maxInFlight = 2 * threads;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        // Submitted tasks in input order; the oldest is always written next
+        Deque<Future<Encoded>> pending = new ArrayDeque<>();
+        Set<String> names = new HashSet<>();
+        int encoded = 0;
+        int skipped = 0;
+        int lineNumber = 0;
+
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                String name = comma < 0 ? "" : line.substring(0, comma).trim();
+                String payload = comma < 0 ? line : line.substring(comma + 1).trim();
+                BitBuffer bits = parsePayload(payload);
+                if (bits == null && comma < 0) {
+                    name = line;
+                    bits = payloadForId(line, spec.payloadBits());
+                }
+                if (bits == null) {
+                    skipped++;
+                    continue;
+                }
+
+                // Keep the number of encoded-but-unwritten images bounded
+                if (pending.size() == maxInFlight) {
+                    writeEntry(zip, pending.removeFirst());
+                    encoded++;
+                }
+                pending.addLast(pool.submit(encodeTask(uniqueName(entryName(name, lineNumber), names), bits)));
+            }
+            while (!pending.isEmpty()) {
+                writeEntry(zip, pending.removeFirst());
+                encoded++;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(encoded, skipped, System.nanoTime() - start);
+    }
+
+    private BitBuffer parsePayload(String payload) {
+        if (payload.length() != spec.payloadBits()) {
+            return null;
+        }
+        try {
+            return BitBuffer.fromBinaryString(payload);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Payload bits for an ID: the 64-bit FNV-1a hash ({@link ContentHash}) of its UTF-8 bytes,
+     * truncated to {@code bits}. Longer payloads take further 64-bit blocks, each hashed with
+     * its block number appended. The same ID always gives the same payload.
+     */
+    static BitBuffer payloadForId(String id, int bits) {
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        long hash = ContentHash.update(ContentHash.INITIAL, bytes, 0, bytes.length);
+        BitBuffer payload = new BitBuffer(bits);
+        long block = hash;
+        for (int i = 0; i < bits; i++) {
+            if (i > 0 && i % 64 == 0) {
+                block = ContentHash.update(hash, i / 64);
+            }
+            payload.set(i, ((block >>> (i % 64)) & 1L) != 0);
+        }
+        return payload;
+    }
+
+    private Callable<Encoded> encodeTask(final String name, final BitBuffer bits) {
+        return new Callable<Encoded>() {
+            @Override
+            public Encoded call() throws IOException {
+                long start = Metrics.start();
+                BitBuffer code = new BitBuffer();
+                spec.getErrorCorrection().encode(bits, spec.cellBits(), code);
+                ModuleMatrix modules = new ModuleMatrix();
+                CodeEncoder.encodeModules(code, spec.getGridSize(), spec.getCellLevels(), modules);
+                Metrics.stop(Metrics.Stage.ENCODE, start);
+
+                start = Metrics.start();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writer.write(modules, CodeFormat.blockSizeFor(spec.getGridSize()), out);
+                Metrics.stop(Metrics.Stage.SAVE, start);
+                return new Encoded(name, out.toByteArray());
+            }
+        };
+    }
+
+    // Waits for the task if it is still running
+    private void writeEntry(ZipOutputStream zip, Future<Encoded> task) throws IOException, InterruptedException {
+        Encoded result;
+        try {
+            result = task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Encoding failed", cause);
+        }
+        zip.putNextEntry(new ZipEntry(result.name));
+        zip.write(result.data);
+        zip.closeEntry();
+    }
+
+    // Appends the extension, numbering repeats of a name from _2 on
+    private String uniqueName(String base, Set<String> names) {
+        String name = base + "." + writer.extension();
+        for (int i = 2; !names.add(name); i++) {
+            name = base + "_" + i + "." + writer.extension();
+        }
+        return name;
+    }
+
+    // Keeps entry names to safe characters; lines without a name are numbered
+    private static String entryName(String name, int lineNumber) {
+        String safe = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        return safe.isEmpty() ? "QRCodeVariant_" + lineNumber : safe;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * A growable, reusable bit string packed into {@code long} words; bit {@code i} is bit
+ * {@code i % 64} of word {@code i / 64}. This is the payload type of the codec, replacing
+ * strings of '0'/'1' characters (16 bits of storage per data bit) in the hot paths. The String
+ * methods are adapters for the UI.
+ *
+ * <p>{@link #reset} only reallocates when a longer payload than ever before is needed, so a
+ * steady-state scan loop that reuses one buffer allocates nothing.
+ */
+public final class BitBuffer {
+
+    private long[] words = new long[0];
+    private int length;
+
+    public BitBuffer() {
+    }
+
+    public BitBuffer(int length) {
+        reset(length);
+    }
+
+    /** Parses a string of '0'/'1' characters. */
+    public static BitBuffer fromBinaryString(CharSequence binary) {
+        BitBuffer buffer = new BitBuffer();
+        buffer.setBinaryString(binary);
+        return buffer;
+    }
+
+    /** Resizes to {@code length} bits, all cleared. */
+    public void reset(int length) {
+        int needed = (length + 63) >>> 6;
+        if (words.length < needed) {
+            words = new long[needed];
+        } else {
+            for (int i = 0; i < needed; i++) {
+                words[i] = 0L;
+            }
+        }
+        this.length = length;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public void set(int index, boolean value) {
+        if (value) {
+            words[index >>> 6] |= 1L << index;
+        } else {
+            words[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * The backing words; only the first {@code (length() + 63) / 64} are meaningful and bits
+     * past {@link #length()} are always zero.
+     */
+    public long[] words() {
+        return words;
+    }
+
+    public void copyFrom(BitBuffer other) {
+        reset(other.length);
+        System.arraycopy(other.words, 0, words, 0, (other.length + 63) >>> 6);
+    }
+
+    /** True when both buffers hold the same bits; no allocation. */
+    public boolean contentEquals(BitBuffer other) {
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = (length + 63) >>> 6; --i >= 0; ) {
+            if (words[i] != other.words[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the contents with a string of '0'/'1' characters.
+     *
+     * @throws IllegalArgumentException on any other character
+     */
+    public void setBinaryString(CharSequence binary) {
+        reset(binary.length());
+        for (int i = 0; i < binary.length(); i++) {
+            char c = binary.charAt(i);
+            if (c == '1') {
+                words[i >>> 6] |= 1L << i;
+            } else if (c != '0') {
+                throw new IllegalArgumentException("Not a binary digit at " + i + ": " + c);
+            }
+        }
+    }
+
+    public String toBinaryString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = get(i) ? '1' : '0';
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return toBinaryString();
+    }
+}
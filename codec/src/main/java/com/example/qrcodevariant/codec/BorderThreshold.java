@@ -0,0 +1,175 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Chooses per-cell black/white thresholds from the code's own border. The encoder paints the
+ * first row and first column with alternating black and white cells (black at even indices),
+ * so every border cell is a known reference sample of the local lighting.
+ *
+ * <p>Lighting is modelled as additive along each axis: the column-0 references give the
+ * vertical variation, the row-0 references the horizontal one, and the threshold for
+ * cell (row, col) is {@code rowMid[row] + colMid[col] - corner}. When the border shows too
+ * little contrast to be trusted the thresholds fall back to a global Otsu split of all cells.
+ */
+final class BorderThreshold {
+
+    /** Minimum difference between mean white and mean black border cells to trust the border. */
+    static final int MIN_CONTRAST = 24;
+
+    private BorderThreshold() {
+    }
+
+    /**
+     * @param cellMeans  row-major mean luminance of every cell, {@code gridSize * gridSize} long
+     * @param gridSize   number of cells per side
+     * @param thresholds output, row-major, same length as {@code cellMeans}; a cell is black when
+     *                   its mean is below its threshold
+     */
+    static void compute(int[] cellMeans, int gridSize, int[] thresholds) {
+        int cells = gridSize * gridSize;
+        if (contrast(cellMeans, gridSize) < MIN_CONTRAST) {
+            int global = otsu(cellMeans, cells);
+            for (int i = 0; i < cells; i++) {
+                thresholds[i] = global;
+            }
+            return;
+        }
+
+        int corner = (borderMid(cellMeans, gridSize, 0, 1) + borderMid(cellMeans, gridSize, 0, gridSize)) / 2;
+        for (int row = 0; row < gridSize; row++) {
+            int rowMid = borderMid(cellMeans, gridSize, row, gridSize);
+            for (int col = 0; col < gridSize; col++) {
+                int colMid = borderMid(cellMeans, gridSize, col, 1);
+                thresholds[row * gridSize + col] = Math.max(0, Math.min(255, rowMid + colMid - corner));
+            }
+        }
+    }
+
+    /**
+     * Estimates, for every cell, how a black and a white cell would read at that spot, under
+     * the same additive lighting model as {@link #compute}. Multi-level decoding places each
+     * cell's mean between the two.
+     *
+     * @param black output, row-major, same length as {@code cellMeans}
+     * @param white output, row-major, same length as {@code cellMeans}
+     */
+    static void computeRange(int[] cellMeans, int gridSize, int[] black, int[] white) {
+        int cornerBlack = cellMeans[0];
+        int cornerWhite = (cellMeans[1] + cellMeans[gridSize]) / 2;
+        for (int row = 0; row < gridSize; row++) {
+            int rowBlack = borderLevel(cellMeans, gridSize, row, gridSize, 0);
+            int rowWhite = borderLevel(cellMeans, gridSize, row, gridSize, 1);
+            for (int col = 0; col < gridSize; col++) {
+                int cell = row * gridSize + col;
+                int colBlack = borderLevel(cellMeans, gridSize, col, 1, 0);
+                int colWhite = borderLevel(cellMeans, gridSize, col, 1, 1);
+                black[cell] = Math.max(0, Math.min(255, rowBlack + colBlack - cornerBlack));
+                white[cell] = Math.max(0, Math.min(255, rowWhite + colWhite - cornerWhite));
+            }
+        }
+    }
+
+    /** Mean white border cell minus mean black border cell; negative if the border is inverted. */
+    static int contrast(int[] cellMeans, int gridSize) {
+        long blackSum = 0;
+        long whiteSum = 0;
+        for (int i = 0; i < gridSize; i++) {
+            // Row 0 and column 0; the shared corner is counted twice which is harmless
+            int sum = cellMeans[i] + cellMeans[i * gridSize];
+            if (i % 2 == 0) {
+                blackSum += sum;
+            } else {
+                whiteSum += sum;
+            }
+        }
+        int blackCount = 2 * ((gridSize + 1) / 2);
+        int whiteCount = 2 * (gridSize / 2);
+        return (int) (whiteSum / whiteCount - blackSum / blackCount);
+    }
+
+    /**
+     * Midpoint between black and white around border cell {@code index}, walking the border
+     * with the given step (1 for row 0, {@code gridSize} for column 0).
+     */
+    private static int borderMid(int[] cellMeans, int gridSize, int index, int step) {
+        int self = cellMeans[index * step];
+        int neighbours;
+        if (index == 0) {
+            neighbours = cellMeans[step];
+        } else if (index == gridSize - 1) {
+            neighbours = cellMeans[(index - 1) * step];
+        } else {
+            neighbours = (cellMeans[(index - 1) * step] + cellMeans[(index + 1) * step]) / 2;
+        }
+        return (self + neighbours) / 2;
+    }
+
+    /**
+     * Black ({@code parity} 0) or white (1) level around border cell {@code index}: the cell
+     * itself when it has that colour, otherwise the mean of its neighbours along the border.
+     */
+    private static int borderLevel(int[] cellMeans, int gridSize, int index, int step, int parity) {
+        if (index % 2 == parity) {
+            return cellMeans[index * step];
+        }
+        if (index == gridSize - 1) {
+            return cellMeans[(index - 1) * step];
+        }
+        if (index == 0) {
+            return cellMeans[step];
+        }
+        return (cellMeans[(index - 1) * step] + cellMeans[(index + 1) * step]) / 2;
+    }
+
+    /** Otsu's threshold over the first {@code count} values (0..255). */
+    static int otsu(int[] values, int count) {
+        return otsu(values, count, new int[256]);
+    }
+
+    /** As {@link #otsu(int[], int)}, reusing {@code histogram} (256 entries) as scratch. */
+    static int otsu(int[] values, int count, int[] histogram) {
+        for (int i = 0; i < 256; i++) {
+            histogram[i] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            histogram[values[i]]++;
+        }
+        return otsu(histogram);
+    }
+
+    /**
+     * Otsu's threshold for a 256-bin histogram. Values strictly below the result form the
+     * dark class.
+     */
+    static int otsu(int[] histogram) {
+        int count = 0;
+        long total = 0;
+        for (int t = 0; t < 256; t++) {
+            count += histogram[t];
+            total += (long) t * histogram[t];
+        }
+
+        long sumBelow = 0;
+        int countBelow = 0;
+        double bestVariance = -1;
+        int best = 128;
+        for (int t = 0; t < 256; t++) {
+            countBelow += histogram[t];
+            if (countBelow == 0) {
+                continue;
+            }
+            int countAbove = count - countBelow;
+            if (countAbove == 0) {
+                break;
+            }
+            sumBelow += (long) t * histogram[t];
+            double meanBelow = (double) sumBelow / countBelow;
+            double meanAbove = (double) (total - sumBelow) / countAbove;
+            double variance = (double) countBelow * countAbove * (meanBelow - meanAbove) * (meanBelow - meanAbove);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                best = t + 1;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Precomputed sample rectangles of every cell for one (grid size, image size, rotation)
+ * combination, as used by {@link GridSampler}. Repeated decodes at the same resolution look the
+ * geometry up instead of recomputing it.
+ *
+ * <p>This only covers axis-aligned decoding through {@link CodeDecoder}'s grid overloads, as in
+ * the benchmarks. {@link PerspectiveSampler}, which every decode path in the app uses, maps its
+ * sample points through each frame's own homography, so there is no per-resolution geometry to
+ * share; its unit-square lattice is a few multiplications per cell and not worth a table.
+ *
+ * <p>Instances are immutable and shared through a small process-wide LRU cache.
+ */
+public final class CellGeometry {
+
+    /** Fraction of the block trimmed from each side so grid lines don't bleed into the mean. */
+    private static final float INNER_PADDING = 0.2f;
+    private static final int CACHE_SIZE = 8;
+
+    private static final Map<Long, CellGeometry> CACHE = new LinkedHashMap<Long, CellGeometry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CellGeometry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final int gridSize;
+    // left, top, right, bottom per cell (row-major), relative to the code's stored origin
+    private final int[] rects;
+
+    private CellGeometry(int gridSize, int width, int height, int rotation) {
+        this.gridSize = gridSize;
+        this.rects = new int[gridSize * gridSize * 4];
+
+        boolean swapped = rotation == 90 || rotation == 270;
+        int uprightWidth = swapped ? height : width;
+        int uprightHeight = swapped ? width : height;
+        int blockWidth = uprightWidth / gridSize;
+        int blockHeight = uprightHeight / gridSize;
+        int innerPadding = (int) (Math.min(blockWidth, blockHeight) * INNER_PADDING);
+
+        int i = 0;
+        for (int row = 0; row < gridSize; row++) {
+            int top = row * blockHeight + innerPadding;
+            int bottom = (row + 1) * blockHeight - innerPadding;
+            for (int col = 0; col < gridSize; col++) {
+                int left = col * blockWidth + innerPadding;
+                int right = (col + 1) * blockWidth - innerPadding;
+
+                // Map the upright rectangle back into stored pixel coordinates
+                switch (rotation) {
+                    case 90:
+                        i = put(i, top, height - right, bottom, height - left);
+                        break;
+                    case 180:
+                        i = put(i, width - right, height - bottom, width - left, height - top);
+                        break;
+                    case 270:
+                        i = put(i, width - bottom, left, width - top, right);
+                        break;
+                    default:
+                        i = put(i, left, top, right, bottom);
+                        break;
+                }
+            }
+        }
+    }
+
+    private int put(int i, int left, int top, int right, int bottom) {
+        rects[i] = left;
+        rects[i + 1] = top;
+        rects[i + 2] = right;
+        rects[i + 3] = bottom;
+        return i + 4;
+    }
+
+    /**
+     * Geometry for a code of {@code gridSize} cells stored in a {@code width x height} area that
+     * must be rotated clockwise by {@code rotation} (0, 90, 180 or 270) to be upright.
+     */
+    public static CellGeometry get(int gridSize, int width, int height, int rotation) {
+        long key = ((long) width << 40) | ((long) height << 18) | ((long) gridSize << 2) | (rotation / 90);
+        synchronized (CACHE) {
+            CellGeometry geometry = CACHE.get(key);
+            if (geometry == null) {
+                geometry = new CellGeometry(gridSize, width, height, rotation);
+                CACHE.put(key, geometry);
+            }
+            return geometry;
+        }
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Sample rectangles as {@code left, top, right, bottom} per cell in row-major order,
+     * relative to the top-left of the code's stored area. Must not be modified.
+     */
+    public int[] getRects() {
+        return rects;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * How many grey levels each data cell can take, and so how many bits it carries.
+ *
+ * <p>{@link #BINARY} is the original black/white code. The multi-level modes paint cells in
+ * greys from white to black; a cell's level is its <em>darkness</em>, 0 for white up to
+ * {@code count() - 1} for black. Bits map to darkness through a Gray code, so mistaking a
+ * cell for a neighbouring level costs exactly one bit, which the error correction can repair.
+ *
+ * <p>The greys are multiples of 17 so they are exact in a 2- or 4-bit grayscale PNG. That
+ * lattice can't split white to black into seven equal steps, so {@link #GRAY_8} steps by 34
+ * and takes the one wider step, 51, into black. The decoder measures every level on the code's
+ * reference ramp rather than assuming the spacing.
+ */
+public enum CellLevels {
+
+    BINARY(1, 255, 0),
+    GRAY_4(2, 255, 170, 85, 0),
+    GRAY_8(3, 255, 221, 187, 153, 119, 85, 51, 0);
+
+    /** Largest {@link #count()} of any mode. */
+    public static final int MAX_COUNT = 8;
+
+    private final int bitsPerCell;
+    // Luminance by darkness
+    private final int[] grays;
+
+    CellLevels(int bitsPerCell, int... grays) {
+        this.bitsPerCell = bitsPerCell;
+        this.grays = grays;
+    }
+
+    public int bitsPerCell() {
+        return bitsPerCell;
+    }
+
+    /** Number of distinct levels. */
+    public int count() {
+        return 1 << bitsPerCell;
+    }
+
+    /** Luminance (0..255) of the cell at {@code darkness}. */
+    public int gray(int darkness) {
+        return grays[darkness];
+    }
+
+    /** Opaque ARGB colour of the cell at {@code darkness}. */
+    public int argb(int darkness) {
+        int gray = gray(darkness);
+        return 0xFF000000 | gray << 16 | gray << 8 | gray;
+    }
+
+    /** The {@link #bitsPerCell()} bits stored by a cell at {@code darkness}. */
+    public int symbol(int darkness) {
+        return darkness ^ (darkness >> 1);
+    }
+
+    /** Inverse of {@link #symbol}. */
+    public int darkness(int symbol) {
+        int darkness = symbol;
+        for (int shift = 1; shift < bitsPerCell; shift <<= 1) {
+            darkness ^= darkness >> shift;
+        }
+        return darkness;
+    }
+
+    /** Smallest grayscale PNG bit depth that represents every level exactly. */
+    int pngBitDepth() {
+        return bitsPerCell == 3 ? 4 : bitsPerCell;
+    }
+}
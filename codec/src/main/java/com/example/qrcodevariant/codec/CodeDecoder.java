@@ -0,0 +1,315 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Decodes the QR code variant from a luminance buffer. A {@link Sampler} reduces the image to
+ * one mean per cell, and cells are classified against thresholds calibrated from the
+ * alternating border (see {@link BorderThreshold}) rather than a fixed grey level.
+ *
+ * <p>Multi-level codes (see {@link CellLevels}) are read through {@link #decodePayload}: each
+ * cell is placed between the local black and white the border shows, and classified by the
+ * nearest of the levels measured on the code's own reference ramp.
+ *
+ * <p>Without an explicit sampler the code is assumed to fill the image (or the given bounds)
+ * axis-aligned, as with {@link GridSampler}.
+ *
+ * <p>Instances keep their buffers between calls, so reuse one decoder per scan loop.
+ * Not thread-safe.
+ */
+public final class CodeDecoder {
+
+    private final LuminanceImage image = new LuminanceImage();
+    private final GridSampler gridSampler = new GridSampler();
+    private int[] cellMeans = new int[0];
+    private int[] thresholds = new int[0];
+    // Backs the String adapters
+    private final BitBuffer stringBits = new BitBuffer();
+    // Raw cell bits and their confidence ahead of error correction
+    private final BitBuffer cellBits = new BitBuffer();
+    private float[] confidence = new float[0];
+    // Multi-level decoding: local black and white per cell, darkness per data cell and where
+    // each level landed on the reference ramp
+    private int[] blacks = new int[0];
+    private int[] whites = new int[0];
+    private float[] darkness = new float[0];
+    private final float[] centroids = new float[CellLevels.MAX_COUNT];
+    private final int[] centroidCounts = new int[CellLevels.MAX_COUNT];
+
+    /**
+     * Pure-JVM entry point: decodes packed ARGB pixels of the given size.
+     *
+     * @return the data bits as a string of '0'/'1' characters
+     */
+    public String decode(int[] argb, int width, int height, int gridSize) {
+        return decode(argb, width, height, gridSize, 0);
+    }
+
+    /**
+     * Pure-JVM entry point for pixels that must be rotated clockwise by {@code rotationDegrees}
+     * to appear upright.
+     *
+     * @return the data bits as a string of '0'/'1' characters
+     */
+    public String decode(int[] argb, int width, int height, int gridSize, int rotationDegrees) {
+        image.setArgb(argb, width, height);
+        return decode(image, gridSize, rotationDegrees);
+    }
+
+    /**
+     * Decodes an already converted luminance image.
+     *
+     * @return the data bits as a string of '0'/'1' characters
+     */
+    public String decode(LuminanceImage image, int gridSize) {
+        return decode(image, gridSize, 0);
+    }
+
+    /**
+     * Decodes an image whose content must be rotated clockwise by {@code rotationDegrees}
+     * (0, 90, 180 or 270) to appear upright, as reported by EXIF or the camera.
+     *
+     * @return the data bits as a string of '0'/'1' characters
+     */
+    public String decode(LuminanceImage image, int gridSize, int rotationDegrees) {
+        return decode(image, gridSize, rotationDegrees, null);
+    }
+
+    /**
+     * Decodes the code occupying {@code bounds} of the image, for example as found by
+     * {@link CodeLocator}. A null {@code bounds} means the whole image.
+     *
+     * @return the data bits as a string of '0'/'1' characters
+     */
+    public String decode(LuminanceImage image, int gridSize, int rotationDegrees, Region bounds) {
+        decode(image, gridSize, rotationDegrees, bounds, stringBits);
+        return stringBits.toBinaryString();
+    }
+
+    /**
+     * Decodes the cells as placed by {@code sampler}.
+     *
+     * @return the data bits as a string of '0'/'1' characters
+     */
+    public String decode(LuminanceImage image, int gridSize, Sampler sampler) {
+        decode(image, gridSize, sampler, stringBits);
+        return stringBits.toBinaryString();
+    }
+
+    /**
+     * Decodes the code occupying {@code bounds} of the image, for example as found by
+     * {@link CodeLocator}, into {@code out}. A null {@code bounds} means the whole image.
+     */
+    public void decode(LuminanceImage image, int gridSize, int rotationDegrees, Region bounds, BitBuffer out) {
+        gridSampler.setRotation(rotationDegrees);
+        gridSampler.setBounds(bounds);
+        decode(image, gridSize, gridSampler, out);
+    }
+
+    /**
+     * Decodes the cells as placed by {@code sampler} and strips the error-correction layer,
+     * feeding it the per-bit confidence as soft input.
+     *
+     * @param payload resized to {@link CodeSpec#payloadBits()}
+     * @return number of cell bits that were read wrong and corrected
+     */
+    public int decodePayload(LuminanceImage image, CodeSpec spec, Sampler sampler, BitBuffer payload) {
+        readCells(image, spec, sampler);
+        long start = Metrics.start();
+        int corrected = spec.getErrorCorrection().decode(cellBits, confidence, payload);
+        Metrics.stop(Metrics.Stage.CORRECT, start);
+        return corrected;
+    }
+
+    /**
+     * Decodes the cells as placed by {@code sampler} into {@code out}, which is resized to
+     * {@code (gridSize - 2)^2} bits in row-major order. Allocates nothing once the decoder and
+     * {@code out} have seen a grid of this size.
+     */
+    public void decode(LuminanceImage image, int gridSize, Sampler sampler, BitBuffer out) {
+        decode(image, gridSize, sampler, out, null);
+    }
+
+    /**
+     * As {@link #decode(LuminanceImage, int, Sampler, BitBuffer)}, also reporting how clearly
+     * each data cell was read: 0 when its mean sat on the threshold, 1 when it was at least half
+     * the border's black/white contrast away from it. This is the soft input for
+     * {@link ErrorCorrection#decode}.
+     *
+     * @param confidence receives one value per data bit; may be null
+     */
+    public void decode(LuminanceImage image, int gridSize, Sampler sampler, BitBuffer out, float[] confidence) {
+        sampleCells(image, gridSize, sampler);
+
+        long start = Metrics.start();
+        BorderThreshold.compute(cellMeans, gridSize, thresholds);
+
+        int dataSize = Math.max(gridSize - 2, 0);
+        out.reset(dataSize * dataSize);
+        float halfContrast = confidence == null ? 1f : Math.max(1f, BorderThreshold.contrast(cellMeans, gridSize) / 2f);
+        int index = 0;
+
+        // Process only the central area (excluding the border row/column)
+        for (int row = 1; row < gridSize - 1; row++) {
+            for (int col = 1; col < gridSize - 1; col++) {
+                int cell = row * gridSize + col;
+                int margin = thresholds[cell] - cellMeans[cell];
+                if (margin > 0) {
+                    out.set(index, true);
+                }
+                if (confidence != null) {
+                    confidence[index] = Math.min(1f, Math.abs(margin) / halfContrast);
+                }
+                index++;
+            }
+        }
+        Metrics.stop(Metrics.Stage.DECODE, start);
+    }
+
+    /**
+     * Reads how dark each data cell is rather than classifying it: the distance of its mean
+     * below its threshold in units of half the border's black/white contrast, clamped to
+     * [-1, 1], so positive means black and negative white. Frames whose border shows less than
+     * {@link BorderThreshold#MIN_CONTRAST} are scaled as if they had that much, so blurred or
+     * washed-out frames count for less. This is the per-frame input of {@link FrameFusion}.
+     *
+     * @param evidence receives {@code (gridSize - 2)^2} values in row-major order
+     */
+    public void readEvidence(LuminanceImage image, int gridSize, Sampler sampler, float[] evidence) {
+        sampleCells(image, gridSize, sampler);
+
+        long start = Metrics.start();
+        BorderThreshold.compute(cellMeans, gridSize, thresholds);
+        float halfContrast = Math.max(BorderThreshold.MIN_CONTRAST, BorderThreshold.contrast(cellMeans, gridSize)) / 2f;
+        int index = 0;
+        for (int row = 1; row < gridSize - 1; row++) {
+            for (int col = 1; col < gridSize - 1; col++) {
+                int cell = row * gridSize + col;
+                float margin = (thresholds[cell] - cellMeans[cell]) / halfContrast;
+                evidence[index++] = Math.max(-1f, Math.min(1f, margin));
+            }
+        }
+        Metrics.stop(Metrics.Stage.DECODE, start);
+    }
+
+    /**
+     * As {@link #readEvidence(LuminanceImage, int, Sampler, float[])} for any code: for
+     * multi-level codes each cell bit's evidence is its confidence, signed by its value.
+     *
+     * @param evidence receives {@link CodeSpec#cellBits()} values
+     */
+    public void readEvidence(LuminanceImage image, CodeSpec spec, Sampler sampler, float[] evidence) {
+        if (spec.getCellLevels() == CellLevels.BINARY) {
+            readEvidence(image, spec.getGridSize(), sampler, evidence);
+            return;
+        }
+        readCells(image, spec, sampler);
+        for (int i = 0; i < cellBits.length(); i++) {
+            evidence[i] = cellBits.get(i) ? confidence[i] : -confidence[i];
+        }
+    }
+
+    // Reads the cell bits of any code into cellBits and confidence
+    private void readCells(LuminanceImage image, CodeSpec spec, Sampler sampler) {
+        int bits = spec.cellBits();
+        if (confidence.length < bits) {
+            confidence = new float[bits];
+        }
+        if (spec.getCellLevels() == CellLevels.BINARY) {
+            decode(image, spec.getGridSize(), sampler, cellBits, confidence);
+        } else {
+            decodeLevels(image, spec, sampler);
+        }
+    }
+
+    /**
+     * Reads a multi-level code into cellBits. Each data cell's mean is placed on a scale from
+     * 0 at the local white to 1 at the local black, the reference ramp shows where every level
+     * actually lands on that scale, and each remaining cell takes the nearest level. A bit's
+     * confidence is 1 unless the runner-up level would change it; then it is how much nearer
+     * the winning level was, relative to the spacing of the two.
+     */
+    private void decodeLevels(LuminanceImage image, CodeSpec spec, Sampler sampler) {
+        int gridSize = spec.getGridSize();
+        CellLevels levels = spec.getCellLevels();
+        sampleCells(image, gridSize, sampler);
+
+        long start = Metrics.start();
+        int cells = gridSize * gridSize;
+        if (blacks.length < cells) {
+            blacks = new int[cells];
+            whites = new int[cells];
+        }
+        BorderThreshold.computeRange(cellMeans, gridSize, blacks, whites);
+        int dataSize = gridSize - 2;
+        int dataCells = dataSize * dataSize;
+        if (darkness.length < dataCells) {
+            darkness = new float[dataCells];
+        }
+        for (int i = 0; i < dataCells; i++) {
+            int cell = (1 + i / dataSize) * gridSize + 1 + i % dataSize;
+            float range = Math.max(1, whites[cell] - blacks[cell]);
+            darkness[i] = (whites[cell] - cellMeans[cell]) / range;
+        }
+
+        // The reference ramp cycles through the levels; a level it doesn't show keeps its
+        // nominal place
+        int count = levels.count();
+        int references = CodeFormat.referenceCells(gridSize, levels);
+        for (int level = 0; level < count; level++) {
+            centroids[level] = 0f;
+            centroidCounts[level] = 0;
+        }
+        for (int i = 0; i < references; i++) {
+            centroids[i % count] += darkness[i];
+            centroidCounts[i % count]++;
+        }
+        for (int level = 0; level < count; level++) {
+            centroids[level] = centroidCounts[level] > 0
+                    ? centroids[level] / centroidCounts[level]
+                    : level / (float) (count - 1);
+        }
+
+        int bitsPerCell = levels.bitsPerCell();
+        cellBits.reset(spec.cellBits());
+        int index = 0;
+        for (int i = references; i < dataCells; i++) {
+            int nearest = -1;
+            int second = -1;
+            float nearestDistance = Float.MAX_VALUE;
+            float secondDistance = Float.MAX_VALUE;
+            for (int level = 0; level < count; level++) {
+                float distance = Math.abs(darkness[i] - centroids[level]);
+                if (distance < nearestDistance) {
+                    second = nearest;
+                    secondDistance = nearestDistance;
+                    nearest = level;
+                    nearestDistance = distance;
+                } else if (distance < secondDistance) {
+                    second = level;
+                    secondDistance = distance;
+                }
+            }
+            float spacing = Math.abs(centroids[nearest] - centroids[second]);
+            float certainty = spacing > 0f ? Math.min(1f, (secondDistance - nearestDistance) / spacing) : 0f;
+            int symbol = levels.symbol(nearest);
+            int ambiguous = symbol ^ levels.symbol(second);
+            for (int bit = bitsPerCell - 1; bit >= 0; bit--) {
+                cellBits.set(index, (symbol >> bit & 1) != 0);
+                confidence[index] = (ambiguous >> bit & 1) != 0 ? certainty : 1f;
+                index++;
+            }
+        }
+        Metrics.stop(Metrics.Stage.DECODE, start);
+    }
+
+    private void sampleCells(LuminanceImage image, int gridSize, Sampler sampler) {
+        CodeFormat.checkGridSize(gridSize);
+        int cells = gridSize * gridSize;
+        if (cellMeans.length < cells) {
+            cellMeans = new int[cells];
+            thresholds = new int[cells];
+        }
+        long start = Metrics.start();
+        sampler.sampleCells(image, gridSize, cellMeans);
+        Metrics.stop(Metrics.Stage.SAMPLE, start);
+    }
+}
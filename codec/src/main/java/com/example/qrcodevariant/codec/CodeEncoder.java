@@ -0,0 +1,125 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.Arrays;
+
+/**
+ * Builds codes in the layout {@link CodeDecoder} reads: an alternating black/white border along
+ * the first row and column, the payload row-major in the cells inside the last row and column,
+ * and 3 px black grid lines on every block boundary. Multi-level codes (see {@link CellLevels})
+ * put their reference ramp in the first data cells and pack the payload several bits per cell.
+ *
+ * <p>Rendering writes row spans straight into a caller-provided pixel array; each block row is
+ * built once and copied down, so the cost is a few array fills per pixel row rather than one
+ * draw call per cell.
+ */
+public final class CodeEncoder {
+
+    public static final int BLACK = 0xFF000000;
+    public static final int WHITE = 0xFFFFFFFF;
+
+    // Grid lines cover the pixels from one before to one after each block boundary
+    private static final int LINE_BEFORE = 1;
+    private static final int LINE_AFTER = 2;
+
+    private CodeEncoder() {
+    }
+
+    /**
+     * Lays out {@code payload} as black/white modules. Bits beyond the payload length are left
+     * white.
+     *
+     * @throws IllegalArgumentException if the payload is longer than the grid can hold
+     */
+    public static void encodeModules(BitBuffer payload, int gridSize, ModuleMatrix out) {
+        encodeModules(payload, gridSize, CellLevels.BINARY, out);
+    }
+
+    /**
+     * Lays out {@code payload} as modules of the given depth, most significant bit of each cell
+     * first. Bits beyond the payload length are left white.
+     *
+     * @throws IllegalArgumentException if the payload is longer than the grid can hold
+     */
+    public static void encodeModules(BitBuffer payload, int gridSize, CellLevels levels, ModuleMatrix out) {
+        CodeFormat.checkGridSize(gridSize);
+        int capacity = CodeFormat.dataBits(gridSize, levels);
+        if (payload.length() > capacity) {
+            throw new IllegalArgumentException("Payload of " + payload.length()
+                    + " bits exceeds the " + capacity + " bits of grid " + gridSize);
+        }
+        out.reset(gridSize, levels);
+
+        // The alternating border (first row and first column)
+        for (int i = 0; i < gridSize; i += 2) {
+            out.set(0, i, true);
+            out.set(i, 0, true);
+        }
+
+        // The central region holds the reference ramp, then the data
+        int dataSize = gridSize - 2;
+        int references = CodeFormat.referenceCells(gridSize, levels);
+        int bitsPerCell = levels.bitsPerCell();
+        int index = 0;
+        for (int cell = 0; cell < dataSize * dataSize; cell++) {
+            int row = 1 + cell / dataSize;
+            int col = 1 + cell % dataSize;
+            if (cell < references) {
+                out.setDarkness(row, col, cell % levels.count());
+                continue;
+            }
+            if (index >= payload.length()) {
+                break;
+            }
+            int symbol = 0;
+            for (int i = 0; i < bitsPerCell; i++) {
+                symbol = symbol << 1 | (index < payload.length() && payload.get(index++) ? 1 : 0);
+            }
+            out.setDarkness(row, col, levels.darkness(symbol));
+        }
+    }
+
+    /** Side length in pixels of a code rendered with the given block size. */
+    public static int sideLength(int gridSize, int blockSize) {
+        return gridSize * blockSize;
+    }
+
+    /**
+     * Renders the modules as packed ARGB (grey for multi-level modules) into {@code pixels}, row-major with a stride of
+     * {@link #sideLength}, ready for a single {@code Bitmap.setPixels}.
+     *
+     * @param pixels at least {@code sideLength^2} entries; reuse it across calls
+     */
+    public static void render(ModuleMatrix modules, int blockSize, int[] pixels) {
+        int gridSize = modules.getSize();
+        CellLevels levels = modules.getCellLevels();
+        int side = sideLength(gridSize, blockSize);
+        if (pixels.length < side * side) {
+            throw new IllegalArgumentException("Pixel array too small for " + side + "x" + side);
+        }
+
+        for (int row = 0; row < gridSize; row++) {
+            // Build the first pixel row of this block row...
+            int first = row * blockSize * side;
+            for (int col = 0; col < gridSize; col++) {
+                int start = first + col * blockSize;
+                Arrays.fill(pixels, start, start + blockSize, levels.argb(modules.getDarkness(row, col)));
+            }
+            for (int boundary = 0; boundary <= gridSize; boundary++) {
+                int x = boundary * blockSize;
+                Arrays.fill(pixels, first + Math.max(0, x - LINE_BEFORE), first + Math.min(side, x + LINE_AFTER), BLACK);
+            }
+            // ...and copy it down the rest of the block
+            for (int y = 1; y < blockSize; y++) {
+                System.arraycopy(pixels, first, pixels, first + y * side, side);
+            }
+        }
+
+        // Horizontal grid lines
+        for (int boundary = 0; boundary <= gridSize; boundary++) {
+            int y = boundary * blockSize;
+            int from = Math.max(0, y - LINE_BEFORE);
+            int to = Math.min(side, y + LINE_AFTER);
+            Arrays.fill(pixels, from * side, to * side, BLACK);
+        }
+    }
+}
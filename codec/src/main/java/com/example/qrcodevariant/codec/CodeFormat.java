@@ -0,0 +1,55 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Layout constants shared by the encoder and decoder. A code is a square grid of
+ * {@code gridSize} cells per side; the first row and column hold the alternating border and
+ * the {@code (gridSize - 2)^2} cells inside the last row and column carry data.
+ */
+public final class CodeFormat {
+
+    public static final int MIN_GRID_SIZE = 5;
+    public static final int MAX_GRID_SIZE = 101;
+
+    /** Block size used for small grids, as the encoder always drew them. */
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+    /** Bitmaps are kept at or below this many pixels per side by shrinking the block size. */
+    public static final int MAX_CODE_SIDE = 1400;
+    private static final int MIN_BLOCK_SIZE = 8;
+
+    private CodeFormat() {
+    }
+
+    public static void checkGridSize(int gridSize) {
+        if (gridSize < MIN_GRID_SIZE || gridSize > MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("Grid size must be between " + MIN_GRID_SIZE
+                    + " and " + MAX_GRID_SIZE + ": " + gridSize);
+        }
+    }
+
+    /** Number of payload bits a code of this grid size carries. */
+    public static int dataBits(int gridSize) {
+        return (gridSize - 2) * (gridSize - 2);
+    }
+
+    /**
+     * Data cells that multi-level codes give over to a reference ramp the decoder calibrates its
+     * palette from: the first data row, cycling through the levels from white to black, and at
+     * least one cell per level. Binary codes need none.
+     */
+    public static int referenceCells(int gridSize, CellLevels levels) {
+        if (levels == CellLevels.BINARY) {
+            return 0;
+        }
+        return Math.min(dataBits(gridSize), Math.max(gridSize - 2, levels.count()));
+    }
+
+    /** Number of bits the data cells of a code of this grid size and depth carry. */
+    public static int dataBits(int gridSize, CellLevels levels) {
+        return (dataBits(gridSize) - referenceCells(gridSize, levels)) * levels.bitsPerCell();
+    }
+
+    /** Pixels per cell for the encoder: {@link #DEFAULT_BLOCK_SIZE}, shrunk for large grids. */
+    public static int blockSizeFor(int gridSize) {
+        return Math.max(MIN_BLOCK_SIZE, Math.min(DEFAULT_BLOCK_SIZE, MAX_CODE_SIDE / gridSize));
+    }
+}
@@ -0,0 +1,515 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.List;
+
+/**
+ * Finds the bounding box of a code inside a larger image, typically a cheap low-resolution
+ * preview of a photo, so that only that area needs to be loaded at full resolution.
+ *
+ * <p>Dark pixels (global Otsu split) are dilated slightly so the cells and grid lines of one
+ * code merge into a single connected component. A quadrilateral is fitted to each roughly square
+ * component, so codes that are rotated or photographed at an angle are found too, and the outer
+ * ring of cells it spans is checked against the code's frame: starting from one corner, the
+ * cells along both adjacent edges must alternate black, white, black..., the rest of the last
+ * row and column must be white, and black and white must differ clearly. The largest component
+ * that passes wins.
+ *
+ * <p>In a blurred photo the thin grid lines wash out above the threshold and the code falls
+ * apart into its separate black cells. When nothing is found the search is therefore repeated
+ * once with a dilation wide enough to bridge one white cell of a code filling the frame; the
+ * fit still uses only the undilated dark pixels, so the outline stays tight. {@link #locateAll}
+ * skips that pass, since at that width neighbouring codes would merge.
+ *
+ * <p>{@link #locateCorners} returns the fitted outline, oriented so the corner starting the
+ * alternating border comes first, ready for a {@link PerspectiveSampler}.
+ * {@link #locateAll} returns the outline of every code in the image rather than the largest.
+ *
+ * <p>Instances keep their buffers between calls. Not thread-safe.
+ */
+public final class CodeLocator {
+
+    /** Fraction of the alternating border, and of the white edges, that must read as expected. */
+    static final float MIN_BORDER_SCORE = 0.85f;
+    private static final int MIN_CODE_SIDE = 10;
+    private static final float MAX_ASPECT = 2f;
+    private static final int MIN_SOLID_NEIGHBOURHOOD = 4;
+
+    private final LuminanceImage mask = new LuminanceImage();
+    private final IntegralImage maskIntegral = new IntegralImage();
+    private final int[] histogram = new int[256];
+    private byte[] dilated = new byte[0];
+    private int[] labels = new int[0];
+    private int[] stack = new int[0];
+    private final Region candidate = new Region();
+    private final Region componentBox = new Region();
+    private final Region located = new Region();
+    private final float[] quad = new float[8];
+    private final float[] trial = new float[8];
+    private final float[] scratchCorners = new float[8];
+    private final PerspectiveSampler sampler = new PerspectiveSampler();
+    private int[] cellMeans = new int[0];
+    private int[] blackLevels = new int[0];
+    private int[] whiteLevels = new int[0];
+
+    /**
+     * Locates the largest code of the given grid size.
+     *
+     * @param bounds receives the code's bounding box on success
+     * @return false when no component shows the alternating border
+     */
+    public boolean locate(LuminanceImage image, int gridSize, Region bounds) {
+        return findComponent(image, gridSize, bounds, null, null, null) > 0;
+    }
+
+    /**
+     * Locates the largest code of the given grid size and fits its outline.
+     *
+     * @param corners receives the upright top-left, top-right, bottom-right and bottom-left
+     *                outer corners as {@code x, y} pairs, ready for
+     *                {@link PerspectiveSampler#setCorners}
+     * @return false when no code with a readable alternating border is found
+     */
+    public boolean locateCorners(LuminanceImage image, int gridSize, float[] corners) {
+        return findComponent(image, gridSize, located, corners, null, null) > 0;
+    }
+
+    /**
+     * Locates every code of the given grid size, for images holding several of them.
+     *
+     * @param bounds  receives one bounding box per code found
+     * @param corners receives each code's outline, in the same order and form as
+     *                {@link #locateCorners}
+     * @return the number of codes found
+     */
+    public int locateAll(LuminanceImage image, int gridSize, List<Region> bounds, List<float[]> corners) {
+        return findComponent(image, gridSize, located, null, bounds, corners);
+    }
+
+    /**
+     * Labels the dark components and picks the largest plausible one whose fitted outline
+     * reads as a code; its corners are written to {@code corners} when given.
+     * When {@code allBounds} is given every component with a fitted outline is collected
+     * instead, and the return value is their count.
+     */
+    private int findComponent(LuminanceImage image, int gridSize, Region bounds, float[] corners,
+                              List<Region> allBounds, List<float[]> allCorners) {
+        long start = Metrics.start();
+        try {
+            return searchComponents(image, gridSize, bounds, corners, allBounds, allCorners);
+        } finally {
+            Metrics.stop(Metrics.Stage.LOCATE, start);
+        }
+    }
+
+    private int searchComponents(LuminanceImage image, int gridSize, Region bounds, float[] corners,
+                                 List<Region> allBounds, List<float[]> allCorners) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int size = width * height;
+        if (size == 0) {
+            return 0;
+        }
+        buildMask(image);
+
+        if (labels.length < size) {
+            labels = new int[size];
+            stack = new int[size];
+        }
+        int radius = dilationRadius(width, height);
+        int found = labelComponents(image, gridSize, radius, bounds, corners, allBounds, allCorners);
+        // Most frames hold no code at all, so the wide pass is only ever tried once
+        int wideRadius = wideDilationRadius(width, height, gridSize);
+        if (found == 0 && allBounds == null && wideRadius > radius) {
+            found = labelComponents(image, gridSize, wideRadius, bounds, corners, null, null);
+        }
+        return found;
+    }
+
+    // One labelling pass over the dark pixels dilated by `radius`
+    private int labelComponents(LuminanceImage image, int gridSize, int radius, Region bounds, float[] corners,
+                                List<Region> allBounds, List<float[]> allCorners) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int size = width * height;
+        dilate(width, height, radius);
+        int[] label = labels;
+        for (int i = 0; i < size; i++) {
+            label[i] = 0;
+        }
+
+        long bestArea = 0;
+        int found = 0;
+        int nextLabel = 1;
+        for (int start = 0; start < size; start++) {
+            if (dilated[start] == 0 || label[start] != 0) {
+                continue;
+            }
+            int id = nextLabel++;
+            floodFill(start, id, width, height, componentBox);
+
+            // Undo the dilation on the box so it hugs the code again
+            candidate.set(Math.min(componentBox.left + radius, componentBox.right - 1),
+                    Math.min(componentBox.top + radius, componentBox.bottom - 1),
+                    Math.max(componentBox.right - radius, componentBox.left + 1),
+                    Math.max(componentBox.bottom - radius, componentBox.top + 1));
+            long area = (long) candidate.width() * candidate.height();
+            if (allBounds != null) {
+                if (isPlausible(candidate) && fitCorners(image, id, gridSize, scratchCorners)) {
+                    allBounds.add(new Region(candidate.left, candidate.top, candidate.right, candidate.bottom));
+                    allCorners.add(scratchCorners.clone());
+                    found++;
+                }
+                continue;
+            }
+            if (area <= bestArea || !isPlausible(candidate)) {
+                continue;
+            }
+            if (fitCorners(image, id, gridSize, corners != null ? corners : scratchCorners)) {
+                bestArea = area;
+                bounds.set(candidate);
+                found = 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Fits a quadrilateral to component {@code id} and tries each of its corners as the upright
+     * top-left; writes the best orientation to {@code corners} if its ring reads well enough.
+     */
+    private boolean fitCorners(LuminanceImage image, int id, int gridSize, float[] corners) {
+        if (!fitQuad(id, image.getWidth())) {
+            return false;
+        }
+
+        int cells = gridSize * gridSize;
+        if (cellMeans.length < cells) {
+            cellMeans = new int[cells];
+            blackLevels = new int[cells];
+            whiteLevels = new int[cells];
+        }
+        float bestScore = -1f;
+        int bestStart = 0;
+        for (int start = 0; start < 4; start++) {
+            rotateQuad(start, trial);
+            completeFarCorner(trial);
+            sampler.setCorners(trial);
+            sampleRing(image, gridSize);
+            float score = ringScore(cellMeans, gridSize);
+            if (score > bestScore) {
+                bestScore = score;
+                bestStart = start;
+            }
+        }
+        if (bestScore < MIN_BORDER_SCORE) {
+            return false;
+        }
+        rotateQuad(bestStart, corners);
+        completeFarCorner(corners);
+        return true;
+    }
+
+    /**
+     * The last row and column are all white, so the outer bottom-right corner is drawn only by
+     * the thin outer grid line, which blurs away in photos; the dark pixels then stop up to a cell
+     * short of it. If the fitted corner lies short of the parallelogram spanned by the other
+     * three, take the parallelogram's corner instead.
+     */
+    private static void completeFarCorner(float[] q) {
+        float px = q[2] + q[6] - q[0];
+        float py = q[3] + q[7] - q[1];
+        float fittedX = q[4] - q[0];
+        float fittedY = q[5] - q[1];
+        float spannedX = px - q[0];
+        float spannedY = py - q[1];
+        if (spannedX * spannedX + spannedY * spannedY > fittedX * fittedX + fittedY * fittedY) {
+            q[4] = px;
+            q[5] = py;
+        }
+    }
+
+    // Copies the quad starting from corner `start`
+    private void rotateQuad(int start, float[] out) {
+        for (int i = 0; i < 4; i++) {
+            out[2 * i] = quad[2 * ((start + i) % 4)];
+            out[2 * i + 1] = quad[2 * ((start + i) % 4) + 1];
+        }
+    }
+
+    private static int dilationRadius(int width, int height) {
+        return Math.max(1, Math.min(width, height) / 128);
+    }
+
+    // Half the cell pitch of a code filling the short side: enough to bridge one white cell
+    private static int wideDilationRadius(int width, int height, int gridSize) {
+        return Math.max(dilationRadius(width, height), (Math.min(width, height) / gridSize + 1) / 2);
+    }
+
+    // Thresholds the image into the dark mask
+    private void buildMask(LuminanceImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int size = width * height;
+        byte[] luma = image.getData();
+
+        for (int i = 0; i < 256; i++) {
+            histogram[i] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            histogram[luma[i] & 0xFF]++;
+        }
+        int threshold = BorderThreshold.otsu(histogram);
+
+        mask.resize(width, height);
+        byte[] dark = mask.getData();
+        for (int i = 0; i < size; i++) {
+            dark[i] = (luma[i] & 0xFF) < threshold ? (byte) 1 : 0;
+        }
+        maskIntegral.build(mask);
+    }
+
+    // Dilates the dark mask by a square of the given radius
+    private void dilate(int width, int height, int radius) {
+        int size = width * height;
+        if (dilated.length < size) {
+            dilated = new byte[size];
+        }
+        for (int y = 0; y < height; y++) {
+            int top = Math.max(0, y - radius);
+            int bottom = Math.min(height, y + radius + 1);
+            for (int x = 0; x < width; x++) {
+                long count = maskIntegral.sum(Math.max(0, x - radius), top, Math.min(width, x + radius + 1), bottom);
+                dilated[y * width + x] = count > 0 ? (byte) 1 : 0;
+            }
+        }
+    }
+
+    // 4-connected flood fill from start; writes the component's bounding box
+    private void floodFill(int start, int id, int width, int height, Region box) {
+        int[] label = labels;
+        int top = 0;
+        stack[top++] = start;
+        label[start] = id;
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+        while (top > 0) {
+            int index = stack[--top];
+            int x = index % width;
+            int y = index / width;
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+
+            if (x > 0 && dilated[index - 1] != 0 && label[index - 1] == 0) {
+                label[index - 1] = id;
+                stack[top++] = index - 1;
+            }
+            if (x < width - 1 && dilated[index + 1] != 0 && label[index + 1] == 0) {
+                label[index + 1] = id;
+                stack[top++] = index + 1;
+            }
+            if (y > 0 && dilated[index - width] != 0 && label[index - width] == 0) {
+                label[index - width] = id;
+                stack[top++] = index - width;
+            }
+            if (y < height - 1 && dilated[index + width] != 0 && label[index + width] == 0) {
+                label[index + width] = id;
+                stack[top++] = index + width;
+            }
+        }
+        box.set(minX, minY, maxX + 1, maxY + 1);
+    }
+
+    /**
+     * Fits the outline of component {@code id}: its dark pixel farthest from the centroid and
+     * the one farthest from that give one diagonal, the pixels farthest on either side of it give
+     * the other. Writes the four corners to {@link #quad} in clockwise order. Only solid dark
+     * pixels count (see {@link #isSolid}), so specks of noise the dilation attached to the code
+     * don't drag its corners outwards.
+     *
+     * @return false when the component has no solid pixels
+     */
+    private boolean fitQuad(int id, int width) {
+        Region box = componentBox;
+
+        long sumX = 0;
+        long sumY = 0;
+        int count = 0;
+        for (int y = box.top; y < box.bottom; y++) {
+            for (int x = box.left; x < box.right; x++) {
+                int index = y * width + x;
+                if (labels[index] == id && isSolid(x, y, width)) {
+                    sumX += x;
+                    sumY += y;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        float cx = sumX / (float) count;
+        float cy = sumY / (float) count;
+
+        int a = farthestFrom(id, width, cx, cy);
+        float ax = a % width + 0.5f;
+        float ay = a / width + 0.5f;
+        int b = farthestFrom(id, width, ax, ay);
+        float bx = b % width + 0.5f;
+        float by = b / width + 0.5f;
+
+        // Farthest pixels on each side of the diagonal a-b
+        float maxSide = 0f;
+        float minSide = 0f;
+        int c = a;
+        int d = b;
+        for (int y = box.top; y < box.bottom; y++) {
+            for (int x = box.left; x < box.right; x++) {
+                int index = y * width + x;
+                if (labels[index] != id || !isSolid(x, y, width)) {
+                    continue;
+                }
+                float side = (bx - ax) * (y + 0.5f - ay) - (by - ay) * (x + 0.5f - ax);
+                if (side > maxSide) {
+                    maxSide = side;
+                    c = index;
+                } else if (side < minSide) {
+                    minSide = side;
+                    d = index;
+                }
+            }
+        }
+
+        // With y pointing down, a -> (positive side) -> b -> (negative side) runs clockwise
+        setCorner(0, a, width);
+        setCorner(1, d, width);
+        setCorner(2, b, width);
+        setCorner(3, c, width);
+        if (!isClockwise(quad)) {
+            setCorner(1, c, width);
+            setCorner(3, d, width);
+        }
+        return true;
+    }
+
+    // A dark pixel with at least MIN_SOLID_NEIGHBOURHOOD dark pixels in its 3x3 neighbourhood,
+    // itself included: the corner of a cell qualifies, an isolated speck doesn't
+    private boolean isSolid(int x, int y, int width) {
+        if (mask.getData()[y * width + x] == 0) {
+            return false;
+        }
+        int height = mask.getHeight();
+        long dark = maskIntegral.sum(Math.max(0, x - 1), Math.max(0, y - 1),
+                Math.min(width, x + 2), Math.min(height, y + 2));
+        return dark >= MIN_SOLID_NEIGHBOURHOOD;
+    }
+
+    private int farthestFrom(int id, int width, float px, float py) {
+        Region box = componentBox;
+        float best = -1f;
+        int bestIndex = box.top * width + box.left;
+        for (int y = box.top; y < box.bottom; y++) {
+            for (int x = box.left; x < box.right; x++) {
+                int index = y * width + x;
+                if (labels[index] != id || !isSolid(x, y, width)) {
+                    continue;
+                }
+                float dx = x + 0.5f - px;
+                float dy = y + 0.5f - py;
+                float distance = dx * dx + dy * dy;
+                if (distance > best) {
+                    best = distance;
+                    bestIndex = index;
+                }
+            }
+        }
+        return bestIndex;
+    }
+
+    private void setCorner(int corner, int index, int width) {
+        quad[2 * corner] = index % width + 0.5f;
+        quad[2 * corner + 1] = index / width + 0.5f;
+    }
+
+    private static boolean isClockwise(float[] q) {
+        float cross = (q[2] - q[0]) * (q[5] - q[3]) - (q[3] - q[1]) * (q[4] - q[2]);
+        return cross > 0f;
+    }
+
+    // Samples the outer ring of cells into cellMeans; the inside plays no part in the check
+    private void sampleRing(LuminanceImage image, int gridSize) {
+        int last = gridSize - 1;
+        for (int i = 0; i < gridSize; i++) {
+            cellMeans[i] = sampler.sampleCell(image, gridSize, 0, i);
+            cellMeans[i * gridSize] = sampler.sampleCell(image, gridSize, i, 0);
+            cellMeans[last * gridSize + i] = sampler.sampleCell(image, gridSize, last, i);
+            cellMeans[i * gridSize + last] = sampler.sampleCell(image, gridSize, i, last);
+        }
+    }
+
+    /**
+     * How well the outer ring of cells reads as an upright code: the lower of the fraction of
+     * row 0 and column 0 alternating black, white, ... from a black top-left cell, and the
+     * fraction of the rest of the last row and column reading white. A cell only counts when it
+     * lies in the outer quarter of the black-white range on its side, which clutter rarely does
+     * for a whole ring. The border cells are judged against the border's mean black and white;
+     * the far edges against the levels {@link BorderThreshold#computeRange} expects there, so
+     * shading across the code doesn't turn them grey.
+     *
+     * <p>A border with less than {@link BorderThreshold#MIN_CONTRAST} between black and white
+     * scores 0; the decoder couldn't trust it either.
+     */
+    private float ringScore(int[] cellMeans, int gridSize) {
+        int contrast = BorderThreshold.contrast(cellMeans, gridSize);
+        if (contrast < BorderThreshold.MIN_CONTRAST) {
+            return 0f;
+        }
+        long blackSum = 0;
+        for (int i = 0; i < gridSize; i += 2) {
+            blackSum += cellMeans[i] + cellMeans[i * gridSize];
+        }
+        int black = (int) (blackSum / (2 * ((gridSize + 1) / 2)));
+        int darkBelow = black + contrast / 4;
+        int lightAbove = black + contrast - contrast / 4;
+
+        int alternating = 0;
+        for (int i = 0; i < gridSize; i++) {
+            boolean expectDark = i % 2 == 0;
+            if (expectDark ? cellMeans[i] < darkBelow : cellMeans[i] >= lightAbove) {
+                alternating++;
+            }
+            int cell = i * gridSize;
+            if (i > 0 && (expectDark ? cellMeans[cell] < darkBelow : cellMeans[cell] >= lightAbove)) {
+                alternating++;
+            }
+        }
+
+        // The last row and column, less the cells they share with the border
+        BorderThreshold.computeRange(cellMeans, gridSize, blackLevels, whiteLevels);
+        int last = gridSize - 1;
+        int white = 0;
+        for (int i = 1; i < gridSize; i++) {
+            if (readsWhite(last * gridSize + i)) {
+                white++;
+            }
+            if (i < last && readsWhite(i * gridSize + last)) {
+                white++;
+            }
+        }
+        return Math.min(alternating / (float) (2 * gridSize - 1), white / (float) (2 * gridSize - 3));
+    }
+
+    private boolean readsWhite(int cell) {
+        return whiteLevels[cell] > blackLevels[cell]
+                && 2 * cellMeans[cell] >= whiteLevels[cell] + blackLevels[cell];
+    }
+
+    private static boolean isPlausible(Region box) {
+        int w = box.width();
+        int h = box.height();
+        if (w < MIN_CODE_SIDE || h < MIN_CODE_SIDE) {
+            return false;
+        }
+        return w <= h * MAX_ASPECT && h <= w * MAX_ASPECT;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Everything both sides must agree on to read a code: the grid size, the error-correction
+ * layer and the number of grey levels per cell. Immutable; usable as a map key.
+ */
+public final class CodeSpec {
+
+    private final int gridSize;
+    private final ErrorCorrection errorCorrection;
+    private final CellLevels cellLevels;
+
+    /** A black/white code. */
+    public CodeSpec(int gridSize, ErrorCorrection errorCorrection) {
+        this(gridSize, errorCorrection, CellLevels.BINARY);
+    }
+
+    public CodeSpec(int gridSize, ErrorCorrection errorCorrection, CellLevels cellLevels) {
+        CodeFormat.checkGridSize(gridSize);
+        if (errorCorrection == null) {
+            throw new IllegalArgumentException("errorCorrection must not be null");
+        }
+        if (cellLevels == null) {
+            throw new IllegalArgumentException("cellLevels must not be null");
+        }
+        this.gridSize = gridSize;
+        this.errorCorrection = errorCorrection;
+        this.cellLevels = cellLevels;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public ErrorCorrection getErrorCorrection() {
+        return errorCorrection;
+    }
+
+    public CellLevels getCellLevels() {
+        return cellLevels;
+    }
+
+    /** Number of bits the data cells carry ahead of error correction. */
+    public int cellBits() {
+        return CodeFormat.dataBits(gridSize, cellLevels);
+    }
+
+    /** Number of user payload bits after error correction. */
+    public int payloadBits() {
+        return errorCorrection.dataBits(cellBits());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CodeSpec)) {
+            return false;
+        }
+        CodeSpec other = (CodeSpec) o;
+        return gridSize == other.gridSize && errorCorrection == other.errorCorrection
+                && cellLevels == other.cellLevels;
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * gridSize + errorCorrection.hashCode()) * 31 + cellLevels.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "CodeSpec(" + gridSize + ", " + errorCorrection + ", " + cellLevels + ")";
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * 64-bit FNV-1a, for recognising content seen before (cache keys), not for security. Feed data
+ * in any number of chunks, starting from {@link #INITIAL}:
+ *
+ * <pre>
+ * long hash = ContentHash.INITIAL;
+ * hash = ContentHash.update(hash, chunk, 0, n);
+ * </pre>
+ */
+public final class ContentHash {
+
+    public static final long INITIAL = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ContentHash() {
+    }
+
+    public static long update(long hash, byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xFF;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+
+    public static long update(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xFF;
+            hash *= PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.qrcodevariant.codec;
+
+/** One code found by {@link MultiCodeDecoder}: where it is and what it holds. */
+public final class DecodedCode {
+
+    /** Axis-aligned bounding box in image pixels. */
+    public final Region bounds;
+    /** Upright top-left, top-right, bottom-right and bottom-left corners as {@code x, y} pairs. */
+    public final float[] corners;
+    /** The payload after error correction. */
+    public final BitBuffer payload;
+    /** Cells the error correction had to flip. */
+    public final int correctedErrors;
+
+    DecodedCode(Region bounds, float[] corners, BitBuffer payload, int correctedErrors) {
+        this.bounds = bounds;
+        this.corners = corners;
+        this.payload = payload;
+        this.correctedErrors = correctedErrors;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedCode(" + bounds + ", " + payload + ")";
+    }
+}
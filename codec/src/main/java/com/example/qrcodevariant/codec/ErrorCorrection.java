@@ -0,0 +1,130 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Optional error-correcting layer between the user's payload and the code's data cells.
+ *
+ * <p>{@link #HAMMING_7_4} protects each 4 payload bits with 3 parity bits. Decoding is
+ * soft-decision: every received block is compared against all 16 codewords, each cell weighted
+ * by how confidently it was read, and the closest codeword wins. One misread cell per block is
+ * always corrected, and two often are when one of them was read with low confidence.
+ */
+public enum ErrorCorrection {
+
+    NONE,
+    HAMMING_7_4;
+
+    private static final int BLOCK_BITS = 7;
+    private static final int BLOCK_DATA_BITS = 4;
+    // Codeword for each 4-bit value, bit i of the int being code bit i
+    private static final int[] CODEWORDS = new int[16];
+
+    static {
+        for (int value = 0; value < 16; value++) {
+            int d1 = value & 1;
+            int d2 = (value >> 1) & 1;
+            int d3 = (value >> 2) & 1;
+            int d4 = (value >> 3) & 1;
+            int p1 = d1 ^ d2 ^ d4;
+            int p2 = d1 ^ d3 ^ d4;
+            int p3 = d2 ^ d3 ^ d4;
+            // Classic layout: p1 p2 d1 p3 d2 d3 d4
+            CODEWORDS[value] = p1 | p2 << 1 | d1 << 2 | p3 << 3 | d2 << 4 | d3 << 5 | d4 << 6;
+        }
+    }
+
+    /** Payload bits that fit in {@code codeBits} cells. */
+    public int dataBits(int codeBits) {
+        if (this == NONE) {
+            return codeBits;
+        }
+        return (codeBits / BLOCK_BITS) * BLOCK_DATA_BITS;
+    }
+
+    /**
+     * Encodes {@code data} into {@code code}, which is resized to {@code codeBits}; cells left
+     * over after the last full block stay white.
+     *
+     * @throws IllegalArgumentException if the data doesn't fit
+     */
+    public void encode(BitBuffer data, int codeBits, BitBuffer code) {
+        if (data.length() > dataBits(codeBits)) {
+            throw new IllegalArgumentException("Payload of " + data.length()
+                    + " bits exceeds the " + dataBits(codeBits) + " bits available");
+        }
+        code.reset(codeBits);
+        if (this == NONE) {
+            for (int i = 0; i < data.length(); i++) {
+                code.set(i, data.get(i));
+            }
+            return;
+        }
+        int blocks = (data.length() + BLOCK_DATA_BITS - 1) / BLOCK_DATA_BITS;
+        for (int block = 0; block < blocks; block++) {
+            int value = 0;
+            for (int i = 0; i < BLOCK_DATA_BITS; i++) {
+                int index = block * BLOCK_DATA_BITS + i;
+                if (index < data.length() && data.get(index)) {
+                    value |= 1 << i;
+                }
+            }
+            int codeword = CODEWORDS[value];
+            for (int i = 0; i < BLOCK_BITS; i++) {
+                code.set(block * BLOCK_BITS + i, (codeword & (1 << i)) != 0);
+            }
+        }
+    }
+
+    /**
+     * Recovers the payload from the cells read by {@link CodeDecoder}.
+     *
+     * @param confidence per-cell confidence in [0, 1] as reported by the decoder, or null to
+     *                   weigh every cell equally (hard-decision decoding)
+     * @param data       resized to {@link #dataBits}{@code (code.length())}
+     * @return number of cells that were read wrong and corrected
+     */
+    public int decode(BitBuffer code, float[] confidence, BitBuffer data) {
+        int codeBits = code.length();
+        data.reset(dataBits(codeBits));
+        if (this == NONE) {
+            for (int i = 0; i < codeBits; i++) {
+                data.set(i, code.get(i));
+            }
+            return 0;
+        }
+
+        int corrected = 0;
+        int blocks = codeBits / BLOCK_BITS;
+        for (int block = 0; block < blocks; block++) {
+            int base = block * BLOCK_BITS;
+            int received = 0;
+            for (int i = 0; i < BLOCK_BITS; i++) {
+                if (code.get(base + i)) {
+                    received |= 1 << i;
+                }
+            }
+
+            // Maximum-likelihood codeword: least total confidence spent on disagreeing cells
+            int best = 0;
+            float bestCost = Float.MAX_VALUE;
+            for (int value = 0; value < 16; value++) {
+                int disagree = CODEWORDS[value] ^ received;
+                float cost = 0f;
+                for (int i = 0; i < BLOCK_BITS; i++) {
+                    if ((disagree & (1 << i)) != 0) {
+                        cost += confidence == null ? 1f : confidence[base + i];
+                    }
+                }
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = value;
+                }
+            }
+
+            corrected += Integer.bitCount(CODEWORDS[best] ^ received);
+            for (int i = 0; i < BLOCK_DATA_BITS; i++) {
+                data.set(block * BLOCK_DATA_BITS + i, (best & (1 << i)) != 0);
+            }
+        }
+        return corrected;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Fuses a stream of frames of the same code into one read. Every located frame contributes its
+ * per-cell darkness evidence (see {@link CodeDecoder#readEvidence}; per cell bit for
+ * multi-level codes); since each frame is sampled through its own border the cells line up
+ * however the code moved between frames. The
+ * evidence is summed per cell, and the code is committed once every cell's total has crossed
+ * the acceptance level, so cells that read clearly need few frames and noisy ones get as many
+ * as they need. The fused totals are then handed to the error correction as soft input.
+ *
+ * <p>A frame that flatly contradicts cells already settled is taken to show a different code:
+ * the evidence is discarded and fusion starts over from that frame.
+ *
+ * <p>Allocates nothing once it has seen a grid of the current size. Not thread-safe.
+ */
+public final class FrameFusion {
+
+    // Fraction of settled cells a frame must contradict before it is treated as a new code
+    private static final float CONFLICT_FRACTION = 0.25f;
+    // Evidence a frame must show against a settled cell to count as contradicting it
+    private static final float CONFLICT_EVIDENCE = 0.5f;
+
+    private final float acceptEvidence;
+    private final CodeDecoder decoder = new CodeDecoder();
+    private final BitBuffer cellBits = new BitBuffer();
+    private final BitBuffer payload = new BitBuffer();
+    private float[] frameEvidence = new float[0];
+    private float[] totals = new float[0];
+    private float[] confidence = new float[0];
+    private CodeSpec spec;
+    private int frames;
+    private int correctedErrors;
+    private boolean committed;
+
+    /**
+     * @param acceptEvidence total evidence every cell needs before the code is committed; a
+     *                       frame contributes at most 1 per cell, so this is also the minimum
+     *                       number of frames for a commit
+     */
+    public FrameFusion(float acceptEvidence) {
+        if (!(acceptEvidence > 0f)) {
+            throw new IllegalArgumentException("acceptEvidence must be positive");
+        }
+        this.acceptEvidence = acceptEvidence;
+    }
+
+    /**
+     * Adds one frame, whose code is placed by {@code sampler}. Switching to a different
+     * {@code spec} starts over.
+     *
+     * @return true exactly once per code, on the frame that commits it; the result is then
+     *         available from {@link #getPayload()}
+     */
+    public boolean offer(LuminanceImage image, CodeSpec spec, Sampler sampler) {
+        if (!spec.equals(this.spec)) {
+            this.spec = spec;
+            reset();
+        }
+        int cells = spec.cellBits();
+        if (totals.length < cells) {
+            frameEvidence = new float[cells];
+            totals = new float[cells];
+            confidence = new float[cells];
+        }
+        decoder.readEvidence(image, spec, sampler, frameEvidence);
+
+        if (contradicts(cells)) {
+            clear(cells);
+        }
+        boolean settled = true;
+        for (int i = 0; i < cells; i++) {
+            totals[i] += frameEvidence[i];
+            if (Math.abs(totals[i]) < acceptEvidence) {
+                settled = false;
+            }
+        }
+        frames++;
+        if (!settled || committed) {
+            return false;
+        }
+
+        cellBits.reset(cells);
+        for (int i = 0; i < cells; i++) {
+            cellBits.set(i, totals[i] > 0f);
+            confidence[i] = Math.min(1f, Math.abs(totals[i]) / acceptEvidence);
+        }
+        long start = Metrics.start();
+        correctedErrors = spec.getErrorCorrection().decode(cellBits, confidence, payload);
+        Metrics.stop(Metrics.Stage.CORRECT, start);
+        committed = true;
+        return true;
+    }
+
+    /** The committed payload, valid after {@link #offer} returned true. */
+    public BitBuffer getPayload() {
+        return payload;
+    }
+
+    /** Cells the error correction flipped in the committed read. */
+    public int getCorrectedErrors() {
+        return correctedErrors;
+    }
+
+    /** Frames fused into the current evidence, including any after the commit. */
+    public int getFrameCount() {
+        return frames;
+    }
+
+    /** Discards all evidence, so the next frame starts a new code. */
+    public void reset() {
+        clear(totals.length);
+    }
+
+    private boolean contradicts(int cells) {
+        int settledCells = 0;
+        int conflicts = 0;
+        for (int i = 0; i < cells; i++) {
+            float total = totals[i];
+            if (Math.abs(total) >= acceptEvidence) {
+                settledCells++;
+                if (total * frameEvidence[i] < 0f && Math.abs(frameEvidence[i]) >= CONFLICT_EVIDENCE) {
+                    conflicts++;
+                }
+            }
+        }
+        return settledCells > 0 && conflicts > settledCells * CONFLICT_FRACTION;
+    }
+
+    private void clear(int cells) {
+        for (int i = 0; i < cells; i++) {
+            totals[i] = 0f;
+        }
+        frames = 0;
+        correctedErrors = 0;
+        committed = false;
+    }
+}
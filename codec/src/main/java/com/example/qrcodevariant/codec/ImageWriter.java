@@ -0,0 +1,16 @@
+package com.example.qrcodevariant.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serialises a rendered code to an image format. Implementations must be safe to call from
+ * several threads at once, as {@link BatchEncoder} does.
+ */
+public interface ImageWriter {
+
+    /** File extension without the dot, e.g. {@code "png"}. */
+    String extension();
+
+    void write(ModuleMatrix modules, int blockSize, OutputStream out) throws IOException;
+}
@@ -0,0 +1,72 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations with power-of-two microsecond buckets: bucket {@code i}
+ * holds durations below {@code 2^(i+1)} microseconds. Percentiles are read as the upper bound of
+ * the bucket they fall in, so they overestimate by less than a factor of two. Safe to record
+ * into from any thread.
+ */
+public final class LatencyHistogram {
+
+    // 2^32 microseconds is over an hour; anything longer lands in the last bucket
+    static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = Math.max(0L, nanos / 1000L);
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros | 1L));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // Retry until this duration is stored or a longer one wins
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long meanNanos() {
+        long n = count.get();
+        return n == 0 ? 0L : totalNanos.get() / n;
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /** Upper bound of the bucket holding the given percentile, capped at the maximum seen. */
+    public long percentileNanos(int percent) {
+        long n = count.get();
+        if (n == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percent / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(maxNanos.get(), (1L << (i + 1)) * 1000L);
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0L);
+        }
+        count.set(0L);
+        totalNanos.set(0L);
+        maxNanos.set(0L);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.qrcodevariant.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable 8-bit luminance buffer. The image is converted once from packed ARGB pixels
+ * so the decoder never has to go back to the source bitmap per sample.
+ */
+public final class LuminanceImage {
+
+    private byte[] luma = new byte[0];
+    private int width;
+    private int height;
+
+    /**
+     * Fills this buffer from packed ARGB pixels (as returned by {@code Bitmap.getPixels}).
+     * The backing array is only reallocated when the new image is larger than any previous one.
+     */
+    public void setArgb(int[] argb, int width, int height) {
+        int size = width * height;
+        if (argb.length < size) {
+            throw new IllegalArgumentException("Pixel array too small for " + width + "x" + height);
+        }
+        ensureCapacity(size);
+        this.width = width;
+        this.height = height;
+
+        byte[] out = luma;
+        for (int i = 0; i < size; i++) {
+            int pixel = argb[i];
+            int gray = (((pixel >> 16) & 0xFF) + ((pixel >> 8) & 0xFF) + (pixel & 0xFF)) / 3;
+            out[i] = (byte) gray;
+        }
+    }
+
+    /**
+     * Copies a window of an 8-bit luminance plane, such as the Y plane of a YUV_420_888 camera
+     * frame, without any colour conversion. The plane's position is not modified.
+     *
+     * @param plane     luminance bytes, one per pixel horizontally
+     * @param rowStride bytes between the starts of consecutive rows in {@code plane}
+     * @param left      left edge of the window in the plane
+     * @param top       top edge of the window in the plane
+     */
+    public void setLuminance(ByteBuffer plane, int rowStride, int left, int top, int width, int height) {
+        ensureCapacity(width * height);
+        this.width = width;
+        this.height = height;
+
+        ByteBuffer rows = plane.duplicate();
+        for (int y = 0; y < height; y++) {
+            rows.position((top + y) * rowStride + left);
+            rows.get(luma, y * width, width);
+        }
+    }
+
+    /**
+     * Sets the dimensions without touching the contents, growing the buffer if needed. Used by
+     * callers that fill {@link #getData()} themselves.
+     */
+    public void resize(int width, int height) {
+        ensureCapacity(width * height);
+        this.width = width;
+        this.height = height;
+    }
+
+    private void ensureCapacity(int size) {
+        if (luma.length < size) {
+            luma = new byte[size];
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Row-major luminance values; only the first {@code width * height} entries are valid.
+     * Read with {@code data[i] & 0xFF}.
+     */
+    public byte[] getData() {
+        return luma;
+    }
+
+    /** {@link ContentHash} of the size and pixels; equal images hash equally. */
+    public long contentHash() {
+        long hash = ContentHash.update(ContentHash.INITIAL, width);
+        hash = ContentHash.update(hash, height);
+        return ContentHash.update(hash, luma, 0, width * height);
+    }
+
+    public int getLuminance(int x, int y) {
+        return luma[y * width + x] & 0xFF;
+    }
+}
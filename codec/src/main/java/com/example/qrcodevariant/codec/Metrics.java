@@ -0,0 +1,151 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide timers and counters for the scan and generate hot paths. Off by default; while
+ * off every call returns after a single volatile read, so instrumented code pays next to
+ * nothing. Timing never touches the values being timed.
+ *
+ * <pre>
+ * long start = Metrics.start();
+ * ... work ...
+ * Metrics.stop(Metrics.Stage.DECODE, start);
+ * </pre>
+ */
+public final class Metrics {
+
+    public enum Stage {
+        /** Reading an image from storage into a bitmap. */
+        LOAD,
+        /** Finding the code's border in a frame. */
+        LOCATE,
+        /** Reducing the image to one mean per cell. */
+        SAMPLE,
+        /** Thresholding cells into bits. */
+        DECODE,
+        /** Stripping the error-correction layer. */
+        CORRECT,
+        /** Laying out modules and rendering pixels. */
+        ENCODE,
+        /** Writing an encoded image out. */
+        SAVE
+    }
+
+    public enum Counter {
+        DECODE_SUCCESS,
+        DECODE_FAILURE,
+        BITMAP_BYTES,
+        FRAMES_ANALYZED,
+        FRAMES_DROPPED,
+        CACHE_HIT,
+        CACHE_MISS
+    }
+
+    private static volatile boolean enabled;
+    private static final LatencyHistogram[] STAGES = new LatencyHistogram[Stage.values().length];
+    private static final AtomicLongArray COUNTERS = new AtomicLongArray(Counter.values().length);
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            STAGES[i] = new LatencyHistogram();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Turns recording on or off; what was recorded so far is kept. */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** @return the start time to hand to {@link #stop}, or 0 when disabled */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /** Records the time since {@code start} under {@code stage}; ignored if {@code start} is 0. */
+    public static void stop(Stage stage, long start) {
+        if (start != 0L) {
+            STAGES[stage.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    public static void increment(Counter counter) {
+        add(counter, 1L);
+    }
+
+    public static void add(Counter counter, long delta) {
+        if (enabled) {
+            COUNTERS.addAndGet(counter.ordinal(), delta);
+        }
+    }
+
+    public static LatencyHistogram histogram(Stage stage) {
+        return STAGES[stage.ordinal()];
+    }
+
+    public static long count(Counter counter) {
+        return COUNTERS.get(counter.ordinal());
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : STAGES) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTERS.length(); i++) {
+            COUNTERS.set(i, 0L);
+        }
+    }
+
+    /** Compact multi-line summary for the debug overlay. */
+    public static String summary() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.US, "%-7s %6s %8s %8s %8s%n", "stage", "n", "p50 ms", "p99 ms", "max ms"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histogram(stage);
+            text.append(String.format(Locale.US, "%-7s %6d %8.2f %8.2f %8.2f%n", stage, h.count(),
+                    h.percentileNanos(50) / 1e6, h.percentileNanos(99) / 1e6, h.maxNanos() / 1e6));
+        }
+        for (Counter counter : Counter.values()) {
+            text.append(counter.name().toLowerCase(Locale.US)).append(": ").append(count(counter)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Snapshot of every stage and counter as a JSON object. */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"enabled\":").append(enabled).append(",\"stages\":{");
+        Stage[] stages = Stage.values();
+        for (int i = 0; i < stages.length; i++) {
+            LatencyHistogram h = histogram(stages[i]);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(stages[i].name()).append("\":{")
+                    .append("\"count\":").append(h.count())
+                    .append(",\"meanNanos\":").append(h.meanNanos())
+                    .append(",\"p50Nanos\":").append(h.percentileNanos(50))
+                    .append(",\"p90Nanos\":").append(h.percentileNanos(90))
+                    .append(",\"p99Nanos\":").append(h.percentileNanos(99))
+                    .append(",\"maxNanos\":").append(h.maxNanos())
+                    .append('}');
+        }
+        json.append("},\"counters\":{");
+        Counter[] counters = Counter.values();
+        for (int i = 0; i < counters.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('"').append(counters[i].name()).append("\":").append(count(counters[i]));
+        }
+        return json.append("}}").toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * The raster of a code with one entry per module (cell), border included: a single bit for
+ * black/white codes, where {@code true} is black, or the cell's darkness packed in
+ * {@link CellLevels#bitsPerCell()} bits for multi-level ones. Callers that only need the
+ * layout, such as label printers or the PNG writer, can use this directly instead of a bitmap.
+ */
+public final class ModuleMatrix {
+
+    private final BitBuffer bits = new BitBuffer();
+    private int size;
+    private CellLevels levels = CellLevels.BINARY;
+
+    /** Resizes to {@code size x size} black/white modules, all white. */
+    public void reset(int size) {
+        reset(size, CellLevels.BINARY);
+    }
+
+    /** Resizes to {@code size x size} modules of the given depth, all white. */
+    public void reset(int size, CellLevels levels) {
+        this.size = size;
+        this.levels = levels;
+        bits.reset(size * size * levels.bitsPerCell());
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public CellLevels getCellLevels() {
+        return levels;
+    }
+
+    /** True when the module is fully black. */
+    public boolean get(int row, int col) {
+        return getDarkness(row, col) == levels.count() - 1;
+    }
+
+    /** Sets the module fully black or white. */
+    public void set(int row, int col, boolean black) {
+        setDarkness(row, col, black ? levels.count() - 1 : 0);
+    }
+
+    /** The module's darkness, from 0 (white) to {@code getCellLevels().count() - 1} (black). */
+    public int getDarkness(int row, int col) {
+        int bitsPerCell = levels.bitsPerCell();
+        int base = (row * size + col) * bitsPerCell;
+        int darkness = 0;
+        for (int i = 0; i < bitsPerCell; i++) {
+            darkness = darkness << 1 | (bits.get(base + i) ? 1 : 0);
+        }
+        return darkness;
+    }
+
+    public void setDarkness(int row, int col, int darkness) {
+        int bitsPerCell = levels.bitsPerCell();
+        int base = (row * size + col) * bitsPerCell;
+        for (int i = 0; i < bitsPerCell; i++) {
+            bits.set(base + i, (darkness >> (bitsPerCell - 1 - i) & 1) != 0);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Decodes every code in an image, such as a photo of a shelf full of labels. Candidates are
+ * found by their alternating border in one pass of {@link CodeLocator#locateAll}, then each is
+ * sampled through its own outline and decoded as a separate fork-join task.
+ *
+ * <p>The image is only read while decoding, so the tasks share it; every task brings its own
+ * decoder and sampler. The locator pass is sequential, so one instance serves one caller at a
+ * time.
+ */
+public final class MultiCodeDecoder {
+
+    private final ForkJoinPool pool;
+    private final CodeLocator locator = new CodeLocator();
+    private final List<Region> bounds = new ArrayList<>();
+    private final List<float[]> corners = new ArrayList<>();
+
+    public MultiCodeDecoder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /** Decodes on the common pool. */
+    public MultiCodeDecoder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @return one entry per code found, top to bottom by their topmost pixel; empty when the
+     * image holds no code of this size
+     */
+    public List<DecodedCode> decodeAll(final LuminanceImage image, final CodeSpec spec) {
+        bounds.clear();
+        corners.clear();
+        int count = locator.locateAll(image, spec.getGridSize(), bounds, corners);
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        final List<DecodeTask> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new DecodeTask(image, spec, bounds.get(i), corners.get(i)));
+        }
+        pool.invoke(new RecursiveTask<Void>() {
+            @Override
+            protected Void compute() {
+                ForkJoinTask.invokeAll(tasks);
+                return null;
+            }
+        });
+
+        List<DecodedCode> codes = new ArrayList<>(count);
+        for (DecodeTask task : tasks) {
+            codes.add(task.join());
+        }
+        return codes;
+    }
+
+    private static final class DecodeTask extends RecursiveTask<DecodedCode> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final LuminanceImage image;
+        private final CodeSpec spec;
+        private final Region bounds;
+        private final float[] corners;
+
+        DecodeTask(LuminanceImage image, CodeSpec spec, Region bounds, float[] corners) {
+            this.image = image;
+            this.spec = spec;
+            this.bounds = bounds;
+            this.corners = corners;
+        }
+
+        @Override
+        protected DecodedCode compute() {
+            PerspectiveSampler sampler = new PerspectiveSampler();
+            sampler.setCorners(corners);
+            BitBuffer payload = new BitBuffer();
+            int corrected = new CodeDecoder().decodePayload(image, spec, sampler, payload);
+            return new DecodedCode(bounds, corners, payload, corrected);
+        }
+    }
+}
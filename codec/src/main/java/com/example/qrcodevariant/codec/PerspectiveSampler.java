@@ -0,0 +1,61 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Samples cells through a {@link PerspectiveTransform}, so codes that are offset, rotated or
+ * photographed at an angle still read correctly. Each cell is averaged over a small lattice of
+ * points around its centre, away from the grid lines. The points move with every frame's
+ * corners, so unlike {@link GridSampler} nothing is cached between frames.
+ *
+ * <p>Corners usually come from {@link CodeLocator#locateCorners}. Reusable across frames.
+ */
+public final class PerspectiveSampler implements Sampler {
+
+    // Points per side of the lattice sampled inside each cell
+    private static final int LATTICE = 4;
+    // The lattice spans the middle half of the cell
+    private static final float LATTICE_START = 0.25f;
+    private static final float LATTICE_STEP = 0.5f / (LATTICE - 1);
+
+    private final PerspectiveTransform transform = new PerspectiveTransform();
+
+    /**
+     * @param corners the upright code's top-left, top-right, bottom-right and bottom-left outer
+     *                corners as {@code x, y} pairs in image pixels
+     */
+    public void setCorners(float[] corners) {
+        transform.setSquareToQuad(corners);
+    }
+
+    @Override
+    public void sampleCells(LuminanceImage image, int gridSize, int[] cellMeans) {
+        for (int row = 0; row < gridSize; row++) {
+            for (int col = 0; col < gridSize; col++) {
+                cellMeans[row * gridSize + col] = sampleCell(image, gridSize, row, col);
+            }
+        }
+    }
+
+    /** Mean luminance of the single cell at ({@code row}, {@code col}). */
+    int sampleCell(LuminanceImage image, int gridSize, int row, int col) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] luma = image.getData();
+        float cell = 1f / gridSize;
+        int sum = 0;
+        int count = 0;
+        for (int j = 0; j < LATTICE; j++) {
+            float v = (row + LATTICE_START + j * LATTICE_STEP) * cell;
+            for (int i = 0; i < LATTICE; i++) {
+                float u = (col + LATTICE_START + i * LATTICE_STEP) * cell;
+                int x = (int) transform.mapX(u, v);
+                int y = (int) transform.mapY(u, v);
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    sum += luma[y * width + x] & 0xFF;
+                    count++;
+                }
+            }
+        }
+        // Cells outside the image read as white
+        return count == 0 ? 255 : sum / count;
+    }
+}
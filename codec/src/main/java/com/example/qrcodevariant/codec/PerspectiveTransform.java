@@ -0,0 +1,59 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Homography from the unit square onto an arbitrary quadrilateral, used to follow a code that
+ * was photographed at an angle.
+ */
+public final class PerspectiveTransform {
+
+    private float a11, a12, a13, a21, a22, a23, a31, a32;
+
+    /**
+     * Sets up the mapping of (0,0), (1,0), (1,1) and (0,1) onto the given corners. The corners
+     * are given as {@code x0, y0, ..., x3, y3} in the same order.
+     */
+    public void setSquareToQuad(float[] corners) {
+        float x0 = corners[0], y0 = corners[1];
+        float x1 = corners[2], y1 = corners[3];
+        float x2 = corners[4], y2 = corners[5];
+        float x3 = corners[6], y3 = corners[7];
+
+        float dx3 = x0 - x1 + x2 - x3;
+        float dy3 = y0 - y1 + y2 - y3;
+        if (dx3 == 0f && dy3 == 0f) {
+            // Parallelogram: the mapping is affine
+            a11 = x1 - x0;
+            a21 = x2 - x1;
+            a31 = x0;
+            a12 = y1 - y0;
+            a22 = y2 - y1;
+            a32 = y0;
+            a13 = 0f;
+            a23 = 0f;
+        } else {
+            float dx1 = x1 - x2;
+            float dx2 = x3 - x2;
+            float dy1 = y1 - y2;
+            float dy2 = y3 - y2;
+            float denominator = dx1 * dy2 - dx2 * dy1;
+            a13 = (dx3 * dy2 - dx2 * dy3) / denominator;
+            a23 = (dx1 * dy3 - dx3 * dy1) / denominator;
+            a11 = x1 - x0 + a13 * x1;
+            a21 = x3 - x0 + a23 * x3;
+            a31 = x0;
+            a12 = y1 - y0 + a13 * y1;
+            a22 = y3 - y0 + a23 * y3;
+            a32 = y0;
+        }
+    }
+
+    /** Image x coordinate of the unit-square point (u, v). */
+    public float mapX(float u, float v) {
+        return (a11 * u + a21 * v + a31) / (a13 * u + a23 * v + 1f);
+    }
+
+    /** Image y coordinate of the unit-square point (u, v). */
+    public float mapY(float u, float v) {
+        return (a12 * u + a22 * v + a32) / (a13 * u + a23 * v + 1f);
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.qrcodevariant.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streams codes as 1-bit grayscale PNG straight from a {@link ModuleMatrix}, or 2- or 4-bit
+ * grayscale for multi-level codes. Modules are scaled
+ * to the block size one scanline at a time, so the full-resolution raster never exists in memory.
+ * Scanlines repeating the one above are written with the PNG "Up" filter, which turns them into
+ * zeros and lets deflate collapse whole blocks; output is typically a few hundred bytes.
+ *
+ * <p>The image matches {@link CodeEncoder#render} pixel for pixel, grid lines included.
+ * Stateless and thread-safe.
+ */
+public final class PngWriter implements ImageWriter {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_UP = 2;
+    private static final int IDAT_CHUNK_SIZE = 32 * 1024;
+
+    @Override
+    public String extension() {
+        return "png";
+    }
+
+    @Override
+    public void write(ModuleMatrix modules, int blockSize, OutputStream out) throws IOException {
+        int gridSize = modules.getSize();
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
+        int bitDepth = modules.getCellLevels().pngBitDepth();
+        int rowBytes = (side * bitDepth + 7) / 8;
+
+        out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream ihdr = new DataOutputStream(header);
+        ihdr.writeInt(side);
+        ihdr.writeInt(side);
+        ihdr.writeByte(bitDepth);
+        ihdr.writeByte(0); // grayscale
+        ihdr.writeByte(0); // deflate
+        ihdr.writeByte(0); // adaptive filtering
+        ihdr.writeByte(0); // no interlace
+        writeChunk(out, "IHDR", header.toByteArray(), header.size());
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            IdatOutputStream idat = new IdatOutputStream(out);
+            DeflaterOutputStream pixels = new DeflaterOutputStream(idat, deflater, 8192);
+
+            byte[] lineRow = new byte[rowBytes];   // all black: a horizontal grid line
+            byte[] bodyRow = new byte[rowBytes];   // module colours with the vertical grid lines
+            byte[] zeros = new byte[rowBytes];
+            boolean previousWasLine = false;
+            for (int y = 0; y < side; y++) {
+                int module = y / blockSize;
+                int offset = y - module * blockSize;
+                boolean isLine = isOnGridLine(offset, blockSize);
+                // Body rows are only ever adjacent within one block row, so matching kinds means
+                // matching pixels
+                if (y > 0 && isLine == previousWasLine) {
+                    pixels.write(FILTER_UP);
+                    pixels.write(zeros);
+                } else {
+                    if (!isLine) {
+                        fillBodyRow(modules, module, blockSize, side, bitDepth, bodyRow);
+                    }
+                    pixels.write(FILTER_NONE);
+                    pixels.write(isLine ? lineRow : bodyRow);
+                }
+                previousWasLine = isLine;
+            }
+            pixels.finish();
+            idat.flushChunk();
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    /**
+     * True when pixel {@code offset} within a block lies on a grid line; lines cover the pixel
+     * before and the two from each block boundary, as in {@link CodeEncoder}.
+     */
+    private static boolean isOnGridLine(int offset, int blockSize) {
+        return offset <= 1 || offset == blockSize - 1;
+    }
+
+    // Packs one pixel row of module row `row`, MSB first, 0 = black
+    private static void fillBodyRow(ModuleMatrix modules, int row, int blockSize, int side, int bitDepth, byte[] out) {
+        CellLevels levels = modules.getCellLevels();
+        int maxSample = (1 << bitDepth) - 1;
+        Arrays.fill(out, (byte) 0);
+        for (int x = 0; x < side; x++) {
+            int col = x / blockSize;
+            int offset = x - col * blockSize;
+            if (isOnGridLine(offset, blockSize)) {
+                continue;
+            }
+            int sample = levels.gray(modules.getDarkness(row, col)) * maxSample / 255;
+            int bit = x * bitDepth;
+            out[bit >> 3] |= (byte) (sample << (8 - bitDepth - (bit & 7)));
+        }
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        writeInt(out, length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        writeInt(out, (int) crc.getValue());
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /** Buffers compressed data and emits it as IDAT chunks of bounded size. */
+    private static final class IdatOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count;
+
+        IdatOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
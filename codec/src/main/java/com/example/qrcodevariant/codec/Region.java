@@ -0,0 +1,44 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * A mutable pixel rectangle {@code [left, right) x [top, bottom)}, reused across frames the
+ * same way {@code android.graphics.Rect} is.
+ */
+public final class Region {
+
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public Region() {
+    }
+
+    public Region(int left, int top, int right, int bottom) {
+        set(left, top, right, bottom);
+    }
+
+    public void set(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(Region other) {
+        set(other.left, other.top, other.right, other.bottom);
+    }
+
+    public int width() {
+        return right - left;
+    }
+
+    public int height() {
+        return bottom - top;
+    }
+
+    @Override
+    public String toString() {
+        return "Region(" + left + ", " + top + " - " + right + ", " + bottom + ")";
+    }
+}
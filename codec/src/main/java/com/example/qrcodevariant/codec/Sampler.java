@@ -0,0 +1,14 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * Maps a code's cells onto image pixels. Implementations decide where each cell lies in the
+ * image; {@link CodeDecoder} only sees the resulting per-cell means.
+ */
+public interface Sampler {
+
+    /**
+     * Fills {@code cellMeans} (row-major, {@code gridSize * gridSize}) with the mean luminance
+     * of the centre of every cell of the upright code, border included.
+     */
+    void sampleCells(LuminanceImage image, int gridSize, int[] cellMeans);
+}
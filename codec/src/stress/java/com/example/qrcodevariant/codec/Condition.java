@@ -0,0 +1,67 @@
+package com.example.qrcodevariant.codec;
+
+/**
+ * One capture condition of the stress corpus: where the code sits in the frame and what the
+ * camera does to it. Immutable; the {@code with} methods return modified copies.
+ */
+final class Condition {
+
+    final String name;
+    /** Code side as a fraction of the frame's short side. */
+    final float scale;
+    /** Clockwise rotation of the code about the frame centre. */
+    final float rotationDegrees;
+    /** Darkening from the top-left to the bottom-right corner, 0 for none. */
+    final float gradient;
+    /** Radius of the box blur, applied twice; 0 for none. */
+    final int blurRadius;
+    /** Standard deviation of Gaussian luminance noise; 0 for none. */
+    final float noise;
+    /** JPEG round-trip quality from 1 to 100; 0 skips compression. */
+    final int jpegQuality;
+
+    private Condition(String name, float scale, float rotationDegrees, float gradient, int blurRadius,
+                      float noise, int jpegQuality) {
+        this.name = name;
+        this.scale = scale;
+        this.rotationDegrees = rotationDegrees;
+        this.gradient = gradient;
+        this.blurRadius = blurRadius;
+        this.noise = noise;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /** Upright code filling 60% of the frame, with no distortion. */
+    static Condition clean(String name) {
+        return new Condition(name, 0.6f, 0f, 0f, 0, 0f, 0);
+    }
+
+    Condition withScale(float scale) {
+        return new Condition(name, scale, rotationDegrees, gradient, blurRadius, noise, jpegQuality);
+    }
+
+    Condition withRotation(float degrees) {
+        return new Condition(name, scale, degrees, gradient, blurRadius, noise, jpegQuality);
+    }
+
+    Condition withGradient(float gradient) {
+        return new Condition(name, scale, rotationDegrees, gradient, blurRadius, noise, jpegQuality);
+    }
+
+    Condition withBlur(int radius) {
+        return new Condition(name, scale, rotationDegrees, gradient, radius, noise, jpegQuality);
+    }
+
+    Condition withNoise(float noise) {
+        return new Condition(name, scale, rotationDegrees, gradient, blurRadius, noise, jpegQuality);
+    }
+
+    Condition withJpeg(int quality) {
+        return new Condition(name, scale, rotationDegrees, gradient, blurRadius, noise, quality);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.qrcodevariant.codec;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes a deterministic corpus of synthetic captures and reports, per condition and grid size,
+ * the share of frames whose code was located, the success rate (payload read without a single
+ * wrong bit), the bit-error rate of the located frames and the p50/p99 decode latency. Decoding
+ * follows the app: locate the border and sample in perspective. A frame whose border isn't found
+ * is a miss, just as the app reports it as not found rather than reading it blind.
+ *
+ * <p>Runs headless on any JVM: {@code ./gradlew :codec:stressReport}, optionally with
+ * {@code --args="--samples 200 --grids 7,21,51 --ecc HAMMING_7_4 --levels GRAY_4 --threads 8"}.
+ */
+public final class StressReport {
+
+    // Camera analysis frames are 640x480
+    static final int FRAME_WIDTH = 640;
+    static final int FRAME_HEIGHT = 480;
+
+    /** Outcome of every sample of one condition at one grid size. */
+    static final class Row {
+        final Condition condition;
+        final int gridSize;
+        final int samples;
+        final int located;
+        final int successes;
+        final long bitErrors;
+        final long bits;
+        final long p50Nanos;
+        final long p99Nanos;
+
+        Row(Condition condition, int gridSize, int samples, int located, int successes, long bitErrors, long bits,
+            long p50Nanos, long p99Nanos) {
+            this.condition = condition;
+            this.gridSize = gridSize;
+            this.samples = samples;
+            this.located = located;
+            this.successes = successes;
+            this.bitErrors = bitErrors;
+            this.bits = bits;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+
+        double locatedRate() {
+            return located / (double) samples;
+        }
+
+        double successRate() {
+            return successes / (double) samples;
+        }
+
+        /** Over the located frames only; NaN when none was located. */
+        double bitErrorRate() {
+            return bitErrors / (double) bits;
+        }
+    }
+
+    /** The default corpus: each distortion on its own at rising strength, plus a handheld mix. */
+    static List<Condition> defaultConditions() {
+        List<Condition> conditions = new ArrayList<>();
+        conditions.add(Condition.clean("clean"));
+        for (int radius : new int[]{1, 2, 3}) {
+            conditions.add(Condition.clean("blur r=" + radius).withBlur(radius));
+        }
+        for (int sigma : new int[]{10, 25, 40}) {
+            conditions.add(Condition.clean("noise sigma=" + sigma).withNoise(sigma));
+        }
+        for (int quality : new int[]{75, 40, 15}) {
+            conditions.add(Condition.clean("jpeg q=" + quality).withJpeg(quality));
+        }
+        for (float gradient : new float[]{0.4f, 0.7f}) {
+            conditions.add(Condition.clean("gradient " + gradient).withGradient(gradient));
+        }
+        for (int degrees : new int[]{15, 45, 90, 180}) {
+            conditions.add(Condition.clean("rotation " + degrees).withRotation(degrees));
+        }
+        for (float scale : new float[]{0.3f, 0.15f}) {
+            conditions.add(Condition.clean("scale " + scale).withScale(scale));
+        }
+        conditions.add(Condition.clean("handheld")
+                .withRotation(8f).withGradient(0.3f).withBlur(1).withNoise(12f).withJpeg(60));
+        return conditions;
+    }
+
+    private final CodeSpec[] specs;
+    private final List<Condition> conditions;
+    private final int samples;
+    private final int threads;
+
+    StressReport(List<Condition> conditions, int[] gridSizes, ErrorCorrection errorCorrection, int samples,
+                 int threads) {
+        this(conditions, gridSizes, errorCorrection, CellLevels.BINARY, samples, threads);
+    }
+
+    StressReport(List<Condition> conditions, int[] gridSizes, ErrorCorrection errorCorrection, CellLevels levels,
+                 int samples, int threads) {
+        this.conditions = conditions;
+        this.specs = new CodeSpec[gridSizes.length];
+        for (int i = 0; i < gridSizes.length; i++) {
+            specs[i] = new CodeSpec(gridSizes[i], errorCorrection, levels);
+        }
+        this.samples = samples;
+        this.threads = threads;
+    }
+
+    /** Decodes the whole corpus, one task per condition and grid size. */
+    List<Row> run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Row>> futures = new ArrayList<>();
+            for (int c = 0; c < conditions.size(); c++) {
+                for (CodeSpec spec : specs) {
+                    final Condition condition = conditions.get(c);
+                    final long seed = 31L * c + spec.getGridSize();
+                    futures.add(executor.submit(new Callable<Row>() {
+                        @Override
+                        public Row call() {
+                            return measure(condition, spec, seed);
+                        }
+                    }));
+                }
+            }
+            List<Row> rows = new ArrayList<>(futures.size());
+            for (Future<Row> future : futures) {
+                rows.add(future.get());
+            }
+            return rows;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Row measure(Condition condition, CodeSpec spec, long seed) {
+        SyntheticCapture capture = new SyntheticCapture(FRAME_WIDTH, FRAME_HEIGHT);
+        LuminanceImage frame = new LuminanceImage();
+        CodeDecoder decoder = new CodeDecoder();
+        CodeLocator locator = new CodeLocator();
+        PerspectiveSampler perspective = new PerspectiveSampler();
+        float[] corners = new float[8];
+        BitBuffer data = new BitBuffer();
+        BitBuffer cells = new BitBuffer();
+        BitBuffer decoded = new BitBuffer();
+        Random random = new Random(seed);
+        long[] latencies = new long[samples];
+        int located = 0;
+        int successes = 0;
+        long bitErrors = 0;
+        int payloadBits = spec.payloadBits();
+
+        for (int s = 0; s < samples; s++) {
+            data.reset(payloadBits);
+            for (int i = 0; i < payloadBits; i++) {
+                data.set(i, random.nextBoolean());
+            }
+            spec.getErrorCorrection().encode(data, spec.cellBits(), cells);
+            capture.capture(cells, spec.getGridSize(), spec.getCellLevels(), condition, random.nextLong(), frame);
+
+            long start = System.nanoTime();
+            boolean found = locator.locateCorners(frame, spec.getGridSize(), corners);
+            if (found) {
+                perspective.setCorners(corners);
+                decoder.decodePayload(frame, spec, perspective, decoded);
+            }
+            latencies[s] = System.nanoTime() - start;
+            if (!found) {
+                continue;
+            }
+
+            located++;
+            int errors = 0;
+            for (int i = 0; i < payloadBits; i++) {
+                if (decoded.get(i) != data.get(i)) {
+                    errors++;
+                }
+            }
+            bitErrors += errors;
+            if (errors == 0) {
+                successes++;
+            }
+        }
+        Arrays.sort(latencies);
+        return new Row(condition, spec.getGridSize(), samples, located, successes, bitErrors,
+                (long) located * payloadBits, percentile(latencies, 50), percentile(latencies, 99));
+    }
+
+    // Nearest-rank percentile of sorted values
+    static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    static void print(List<Row> rows, PrintStream out) {
+        out.printf(Locale.US, "%-18s %5s %8s %9s %9s %10s %9s %9s%n",
+                "condition", "grid", "samples", "located", "success", "BER", "p50 ms", "p99 ms");
+        for (Row row : rows) {
+            out.printf(Locale.US, "%-18s %5d %8d %8.1f%% %8.1f%% %10.2e %9.2f %9.2f%n",
+                    row.condition.name, row.gridSize, row.samples, 100 * row.locatedRate(), 100 * row.successRate(),
+                    row.bitErrorRate(), row.p50Nanos / 1e6, row.p99Nanos / 1e6);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int samples = 50;
+        int[] gridSizes = {7, 21, 51};
+        ErrorCorrection errorCorrection = ErrorCorrection.NONE;
+        CellLevels levels = CellLevels.BINARY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--samples":
+                    samples = Integer.parseInt(value);
+                    break;
+                case "--grids":
+                    String[] parts = value.split(",");
+                    gridSizes = new int[parts.length];
+                    for (int g = 0; g < parts.length; g++) {
+                        gridSizes[g] = Integer.parseInt(parts[g]);
+                    }
+                    break;
+                case "--ecc":
+                    errorCorrection = ErrorCorrection.valueOf(value);
+                    break;
+                case "--levels":
+                    levels = CellLevels.valueOf(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+
+        long start = System.nanoTime();
+        List<Row> rows = new StressReport(defaultConditions(), gridSizes, errorCorrection, levels, samples, threads)
+                .run();
+        print(rows, System.out);
+        System.out.printf(Locale.US, "%d frames on %d threads in %.1f s (%s, %s)%n",
+                rows.size() * samples, threads, (System.nanoTime() - start) / 1e9, errorCorrection, levels);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.qrcodevariant.codec;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Produces camera-like frames of a code. The code is rendered exactly as the app renders it
+ * ({@link CodeEncoder#render} at {@link CodeFormat#blockSizeFor}), then placed in the frame
+ * through the condition's scale and rotation and degraded by lighting, blur, noise and JPEG
+ * compression, in that order. The same seed always gives the same frame.
+ *
+ * <p>Instances keep their buffers between frames. Not thread-safe.
+ */
+final class SyntheticCapture {
+
+    private static final int PAPER = 235;
+    private static final int INK = 25;
+    // Samples per frame pixel along each axis
+    private static final int SUPERSAMPLE = 4;
+
+    private final int width;
+    private final int height;
+    private final ModuleMatrix modules = new ModuleMatrix();
+    private int[] code = new int[0];
+    private final byte[] gray;
+    private final int[] blurRow;
+
+    SyntheticCapture(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.gray = new byte[width * height];
+        this.blurRow = new int[Math.max(width, height)];
+    }
+
+    /** Renders {@code payload}'s black/white code under {@code condition} into {@code frame}. */
+    void capture(BitBuffer payload, int gridSize, Condition condition, long seed, LuminanceImage frame) {
+        capture(payload, gridSize, CellLevels.BINARY, condition, seed, frame);
+    }
+
+    /** Renders {@code payload}'s code of the given depth under {@code condition} into {@code frame}. */
+    void capture(BitBuffer payload, int gridSize, CellLevels levels, Condition condition, long seed,
+                 LuminanceImage frame) {
+        CodeEncoder.encodeModules(payload, gridSize, levels, modules);
+        int blockSize = CodeFormat.blockSizeFor(gridSize);
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
+        if (code.length < side * side) {
+            code = new int[side * side];
+        }
+        CodeEncoder.render(modules, blockSize, code);
+
+        Random random = new Random(seed);
+        place(side, condition);
+        if (condition.gradient > 0f) {
+            shade(condition.gradient);
+        }
+        if (condition.blurRadius > 0) {
+            boxBlur(condition.blurRadius);
+            boxBlur(condition.blurRadius);
+        }
+        if (condition.noise > 0f) {
+            addNoise(condition.noise, random);
+        }
+        if (condition.jpegQuality > 0) {
+            jpegRoundTrip(condition.jpegQuality);
+        }
+        frame.setLuminance(ByteBuffer.wrap(gray), width, 0, 0, width, height);
+    }
+
+    // Inverse-maps a grid of points in every frame pixel into the rendered code and averages
+    // them, so thin grid lines come out grey like through a lens instead of vanishing
+    private void place(int side, Condition condition) {
+        float codeSide = Math.min(width, height) * condition.scale;
+        float unit = side / codeSide;
+        double radians = Math.toRadians(condition.rotationDegrees);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float cx = width / 2f;
+        float cy = height / 2f;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int sy = 0; sy < SUPERSAMPLE; sy++) {
+                    for (int sx = 0; sx < SUPERSAMPLE; sx++) {
+                        float dx = x + (sx + 0.5f) / SUPERSAMPLE - cx;
+                        float dy = y + (sy + 0.5f) / SUPERSAMPLE - cy;
+                        // Undo the clockwise rotation, then scale into code pixels
+                        float u = (dx * cos + dy * sin) * unit + side / 2f;
+                        float v = (-dx * sin + dy * cos) * unit + side / 2f;
+                        sum += codeGray((int) Math.floor(u), (int) Math.floor(v), side);
+                    }
+                }
+                gray[y * width + x] = (byte) (sum / (SUPERSAMPLE * SUPERSAMPLE));
+            }
+        }
+    }
+
+    // Black modules print as dark ink rather than pure black, greys in between, and outside
+    // the code is paper
+    private int codeGray(int x, int y, int side) {
+        if (x < 0 || y < 0 || x >= side || y >= side) {
+            return PAPER;
+        }
+        return INK + (PAPER - INK) * (code[y * side + x] & 0xFF) / 255;
+    }
+
+    private void shade(float strength) {
+        float span = width + height;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                float light = 1f - strength * (x + y) / span;
+                gray[i] = (byte) Math.round((gray[i] & 0xFF) * light);
+            }
+        }
+    }
+
+    // Separable box blur with clamped edges
+    private void boxBlur(int radius) {
+        int window = 2 * radius + 1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                blurRow[x] = gray[row + x] & 0xFF;
+            }
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += blurRow[Math.max(0, Math.min(width - 1, x + k))];
+                }
+                gray[row + x] = (byte) (sum / window);
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                blurRow[y] = gray[y * width + x] & 0xFF;
+            }
+            for (int y = 0; y < height; y++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += blurRow[Math.max(0, Math.min(height - 1, y + k))];
+                }
+                gray[y * width + x] = (byte) (sum / window);
+            }
+        }
+    }
+
+    private void addNoise(float sigma, Random random) {
+        for (int i = 0; i < gray.length; i++) {
+            int value = (gray[i] & 0xFF) + (int) Math.round(random.nextGaussian() * sigma);
+            gray[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+    }
+
+    private void jpegRoundTrip(int quality) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] raster = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(gray, 0, raster, 0, gray.length);
+
+        javax.imageio.ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            try (MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality / 100f);
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+            decoded.getRaster().getDataElements(0, 0, width, height, gray);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchEncoderTest {
+
+    // Writes the module bits as text so entries can be checked without an image decoder
+    private static final ImageWriter TEXT_WRITER = new ImageWriter() {
+        @Override
+        public String extension() {
+            return "txt";
+        }
+
+        @Override
+        public void write(ModuleMatrix modules, int blockSize, OutputStream out) throws IOException {
+            for (int row = 1; row < modules.getSize() - 1; row++) {
+                for (int col = 1; col < modules.getSize() - 1; col++) {
+                    out.write(modules.get(row, col) ? '1' : '0');
+                }
+            }
+        }
+    };
+
+    @Test
+    public void encodesEveryValidLineIntoTheArchive() throws Exception {
+        StringBuilder input = new StringBuilder("id,payload\n");
+        for (int i = 0; i < 50; i++) {
+            input.append("item").append(i).append(',').append(i % 2 == 0 ? "101010101" : "010101010").append('\n');
+        }
+        input.append("\n110011001\nitem1,111000111\nbad,12\n");
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        BatchEncoder.Result result;
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            result = new BatchEncoder(5, ErrorCorrection.NONE, TEXT_WRITER, 3).encode(
+                    new BufferedReader(new StringReader(input.toString())), zip);
+        }
+
+        assertEquals(52, result.encoded);
+        assertEquals(2, result.skipped);
+
+        Set<String> names = new HashSet<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+                if (entry.getName().equals("item3.txt")) {
+                    assertEquals("010101010", new String(zip.readAllBytes(), "US-ASCII"));
+                }
+            }
+        }
+        assertEquals(52, names.size());
+        assertTrue(names.contains("item1_2.txt"));
+        assertTrue(names.contains("QRCodeVariant_53.txt"));
+    }
+
+    @Test
+    public void encodesPlainIdsThroughTheirHashedPayload() throws Exception {
+        String input = "order-1001\norder-1002\nrow,12\n";
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        BatchEncoder.Result result;
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            result = new BatchEncoder(21, ErrorCorrection.NONE, TEXT_WRITER, 2).encode(
+                    new BufferedReader(new StringReader(input)), zip);
+        }
+
+        assertEquals(2, result.encoded);
+        assertEquals(1, result.skipped);
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(Arrays.asList("order-1001.txt", "order-1002.txt"), names);
+    }
+
+    @Test
+    public void idPayloadsAreStableAndFillEveryBit() {
+        int bits = new CodeSpec(51, ErrorCorrection.NONE).payloadBits();
+        BitBuffer first = BatchEncoder.payloadForId("order-1001", bits);
+
+        assertEquals(bits, first.length());
+        assertTrue(first.contentEquals(BatchEncoder.payloadForId("order-1001", bits)));
+        assertFalse(first.contentEquals(BatchEncoder.payloadForId("order-1002", bits)));
+        // Bits past the first 64-bit block come from further blocks, not zeros
+        int ones = 0;
+        for (int i = 64; i < bits; i++) {
+            if (first.get(i)) {
+                ones++;
+            }
+        }
+        assertTrue(ones > (bits - 64) / 4);
+    }
+
+    @Test
+    public void writesEntriesInInputOrder() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            input.append(i % 4 == 0 ? "dup" : "item" + i).append(',').append("101010101").append('\n');
+        }
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+            new BatchEncoder(5, ErrorCorrection.NONE, TEXT_WRITER, 4).encode(
+                    new BufferedReader(new StringReader(input.toString())), zip);
+        }
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        assertEquals(40, names.size());
+        for (int i = 0; i < 40; i++) {
+            String expected = i % 4 != 0 ? "item" + i : i == 0 ? "dup" : "dup_" + (i / 4 + 1);
+            assertEquals(expected + ".txt", names.get(i));
+        }
+    }
+}
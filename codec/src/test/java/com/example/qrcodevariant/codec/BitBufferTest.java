@@ -0,0 +1,38 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BitBufferTest {
+
+    @Test
+    public void roundTripsBinaryStringAcrossWordBoundary() {
+        StringBuilder binary = new StringBuilder();
+        for (int i = 0; i < 81; i++) {
+            binary.append(i % 3 == 0 ? '1' : '0');
+        }
+        BitBuffer bits = BitBuffer.fromBinaryString(binary);
+
+        assertEquals(81, bits.length());
+        assertTrue(bits.get(78));
+        assertFalse(bits.get(80));
+        assertEquals(binary.toString(), bits.toBinaryString());
+    }
+
+    @Test
+    public void resetClearsReusedWords() {
+        BitBuffer bits = BitBuffer.fromBinaryString("1111111111");
+        bits.reset(4);
+
+        assertEquals("0000", bits.toBinaryString());
+        assertTrue(bits.contentEquals(new BitBuffer(4)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonBinaryCharacters() {
+        BitBuffer.fromBinaryString("10201");
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CodeDecoderTest {
+
+    @Test
+    public void decodesRenderedCode() {
+        String bits = "1011001110100101110001011";
+        int[] argb = TestCodes.render(bits, 7, 40);
+
+        assertEquals(bits, new CodeDecoder().decode(argb, 7 * 40, 7 * 40, 7));
+    }
+
+    @Test
+    public void decoderIsReusableAcrossSizes() {
+        CodeDecoder decoder = new CodeDecoder();
+        String small = "101010101";
+        String large = "0000011111000001111100000";
+
+        assertEquals(large, decoder.decode(TestCodes.render(large, 7, 50), 350, 350, 7));
+        assertEquals(small, decoder.decode(TestCodes.render(small, 5, 20), 100, 100, 5));
+    }
+
+    @Test
+    public void decodesLargeGrid() {
+        int gridSize = 41;
+        StringBuilder bits = new StringBuilder();
+        for (int i = 0; i < CodeFormat.dataBits(gridSize); i++) {
+            bits.append((i * 7 + i / 13) % 3 == 0 ? '1' : '0');
+        }
+        int size = gridSize * 12;
+
+        assertEquals(bits.toString(), new CodeDecoder().decode(
+                TestCodes.render(bits.toString(), gridSize, 12), size, size, gridSize));
+        assertSame(CellGeometry.get(gridSize, size, size, 0), CellGeometry.get(gridSize, size, size, 0));
+    }
+
+    @Test
+    public void decodesUnderLightingGradient() {
+        String bits = "1100101011100100011101001";
+        int size = 7 * 40;
+        int[] argb = TestCodes.render(bits, 7, 40);
+        // Darken towards the bottom-right so white cells there drop well below 128
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int gray = argb[y * size + x] & 0xFF;
+                int shaded = Math.max(0, gray - (x + y) * 200 / (2 * size));
+                argb[y * size + x] = 0xFF000000 | shaded << 16 | shaded << 8 | shaded;
+            }
+        }
+
+        assertEquals(bits, new CodeDecoder().decode(argb, size, size, 7));
+    }
+
+    @Test
+    public void decodesMultiLevelCodesUnderLightingGradient() {
+        for (CellLevels levels : new CellLevels[]{CellLevels.GRAY_4, CellLevels.GRAY_8}) {
+            CodeSpec spec = new CodeSpec(9, ErrorCorrection.NONE, levels);
+            BitBuffer payload = new BitBuffer(spec.payloadBits());
+            for (int i = 0; i < payload.length(); i++) {
+                payload.set(i, (i * 7 + i / 3) % 5 < 2);
+            }
+            ModuleMatrix modules = new ModuleMatrix();
+            CodeEncoder.encodeModules(payload, 9, levels, modules);
+            int size = CodeEncoder.sideLength(9, 30);
+            int[] argb = new int[size * size];
+            CodeEncoder.render(modules, 30, argb);
+            // Dim towards the bottom-right, compressing the levels there as a shadow would
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int gray = argb[y * size + x] & 0xFF;
+                    int shaded = gray * (4 * size - (x + y)) / (4 * size);
+                    argb[y * size + x] = 0xFF000000 | shaded << 16 | shaded << 8 | shaded;
+                }
+            }
+            LuminanceImage image = new LuminanceImage();
+            image.setArgb(argb, size, size);
+
+            BitBuffer decoded = new BitBuffer();
+            assertEquals(0, new CodeDecoder().decodePayload(image, spec, new GridSampler(), decoded));
+            assertEquals(levels.toString(), payload.toBinaryString(), decoded.toBinaryString());
+        }
+    }
+
+    @Test
+    public void multiLevelCodesCarryMoreBits() {
+        assertEquals(25, new CodeSpec(7, ErrorCorrection.NONE).cellBits());
+        // One data row of 7x7 is the reference ramp
+        assertEquals(40, new CodeSpec(7, ErrorCorrection.NONE, CellLevels.GRAY_4).cellBits());
+        // 8 levels need 8 reference cells
+        assertEquals(51, new CodeSpec(7, ErrorCorrection.NONE, CellLevels.GRAY_8).cellBits());
+    }
+
+    @Test
+    public void decodesStoredRotationWithoutRotatingPixels() {
+        String bits = "1011001110100101110001011";
+        int size = 7 * 40;
+        int[] stored = TestCodes.render(bits, 7, 40);
+        CodeDecoder decoder = new CodeDecoder();
+        LuminanceImage image = new LuminanceImage();
+
+        // Each pass turns the stored pixels a further 90 degrees counter-clockwise,
+        // so they need that much clockwise rotation to be upright again
+        for (int rotation = 90; rotation < 360; rotation += 90) {
+            stored = rotateCounterClockwise(stored, size);
+            image.setArgb(stored, size, size);
+            assertEquals("rotation " + rotation, bits, decoder.decode(image, 7, rotation));
+        }
+    }
+
+    private static int[] rotateCounterClockwise(int[] argb, int size) {
+        int[] rotated = new int[argb.length];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                rotated[y * size + x] = argb[x * size + (size - 1 - y)];
+            }
+        }
+        return rotated;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CodeEncoderTest {
+
+    @Test
+    public void modulesHoldBorderAndPayload() {
+        ModuleMatrix modules = new ModuleMatrix();
+        CodeEncoder.encodeModules(BitBuffer.fromBinaryString("100000001"), 5, modules);
+
+        assertTrue(modules.get(0, 0));
+        assertFalse(modules.get(0, 1));
+        assertTrue(modules.get(4, 0));
+        assertTrue(modules.get(1, 1));
+        assertFalse(modules.get(1, 2));
+        assertTrue(modules.get(3, 3));
+        assertFalse(modules.get(4, 4));
+    }
+
+    @Test
+    public void renderedCodeDecodes() {
+        int gridSize = 23;
+        BitBuffer payload = new BitBuffer(CodeFormat.dataBits(gridSize));
+        for (int i = 0; i < payload.length(); i += 3) {
+            payload.set(i, true);
+        }
+        ModuleMatrix modules = new ModuleMatrix();
+        CodeEncoder.encodeModules(payload, gridSize, modules);
+        int blockSize = CodeFormat.blockSizeFor(gridSize);
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
+        int[] pixels = new int[side * side];
+        CodeEncoder.render(modules, blockSize, pixels);
+
+        assertEquals(payload.toBinaryString(), new CodeDecoder().decode(pixels, side, side, gridSize));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedPayload() {
+        CodeEncoder.encodeModules(new BitBuffer(10), 5, new ModuleMatrix());
+    }
+}
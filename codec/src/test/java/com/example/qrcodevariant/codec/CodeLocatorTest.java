@@ -0,0 +1,152 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CodeLocatorTest {
+
+    @Test
+    public void findsCodeInsideLargerImageAndIgnoresOtherShapes() {
+        String bits = "0110100111010010110100110";
+        int width = 400;
+        int height = 300;
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, TestCodes.WHITE);
+        // A solid dark blob has no alternating border and must be rejected
+        TestCodes.fill(argb, width, 10, 10, 80, 80, TestCodes.BLACK);
+        TestCodes.paste(argb, width, height, bits, 7, 20, 220, 120);
+
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, width, height);
+        Region bounds = new Region();
+
+        assertTrue(new CodeLocator().locate(image, 7, bounds));
+        assertEquals(220, bounds.left, 2);
+        assertEquals(120, bounds.top, 2);
+        assertEquals(360, bounds.right, 2);
+        assertEquals(260, bounds.bottom, 2);
+        assertEquals(bits, new CodeDecoder().decode(image, 7, 0, bounds));
+    }
+
+    @Test
+    public void findsBlurredCodeWhoseGridLinesWashedOut() {
+        String bits = "0110100111010010110100110";
+        int width = 400;
+        int height = 300;
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, TestCodes.WHITE);
+        TestCodes.paste(argb, width, height, bits, 7, 20, 130, 80);
+        // Twice blurred the 3 px grid lines no longer reach the dark threshold, leaving the
+        // black cells as separate blobs
+        boxBlur(argb, width, height, 3);
+        boxBlur(argb, width, height, 3);
+
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, width, height);
+        float[] corners = new float[8];
+
+        assertTrue(new CodeLocator().locateCorners(image, 7, corners));
+        PerspectiveSampler sampler = new PerspectiveSampler();
+        sampler.setCorners(corners);
+        assertEquals(bits, new CodeDecoder().decode(image, 7, sampler));
+    }
+
+    @Test
+    public void reportsNothingWithoutBorder() {
+        int[] argb = new int[100 * 100];
+        Arrays.fill(argb, TestCodes.WHITE);
+        TestCodes.fill(argb, 100, 20, 20, 50, 50, TestCodes.BLACK);
+
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, 100, 100);
+
+        assertFalse(new CodeLocator().locate(image, 5, new Region()));
+    }
+
+    @Test
+    public void ignoresBlockClutterWithoutCode() {
+        int width = 320;
+        int height = 240;
+        int[] argb = new int[width * height];
+        LuminanceImage image = new LuminanceImage();
+        CodeLocator locator = new CodeLocator();
+        float[] corners = new float[8];
+        for (int seed = 0; seed < 40; seed++) {
+            drawClutter(argb, width, height, new Random(seed));
+            image.setArgb(argb, width, height);
+
+            assertFalse("seed " + seed, locator.locateCorners(image, 5, corners));
+            assertFalse("seed " + seed, locator.locateCorners(image, 7, corners));
+        }
+    }
+
+    @Test
+    public void ignoresNoisyFramesOfClutterWithoutCode() {
+        int width = 320;
+        int height = 240;
+        int[] scene = new int[width * height];
+        int[] argb = new int[width * height];
+        LuminanceImage image = new LuminanceImage();
+        CodeLocator locator = new CodeLocator();
+        float[] corners = new float[8];
+        Random random = new Random(1);
+        for (int seed = 0; seed < 4; seed++) {
+            drawClutter(scene, width, height, new Random(100 + seed));
+            // A stream of camera frames of the same scene, each with fresh noise
+            for (int frame = 0; frame < 10; frame++) {
+                for (int i = 0; i < scene.length; i++) {
+                    int value = (scene[i] & 0xFF) + (int) Math.round(random.nextGaussian() * 8);
+                    argb[i] = gray(Math.max(0, Math.min(255, value)));
+                }
+                image.setArgb(argb, width, height);
+
+                assertFalse("seed " + seed + " frame " + frame, locator.locateCorners(image, 5, corners));
+            }
+        }
+    }
+
+    // Overlapping rectangles of random greys, a few cells wide: plenty of edges that alternate
+    // by chance
+    private static void drawClutter(int[] argb, int width, int height, Random random) {
+        Arrays.fill(argb, gray(150 + random.nextInt(100)));
+        for (int i = 0; i < 150; i++) {
+            int w = 3 + random.nextInt(20);
+            int h = 3 + random.nextInt(20);
+            TestCodes.fill(argb, width, random.nextInt(width - w), random.nextInt(height - h), w, h,
+                    gray(random.nextInt(256)));
+        }
+    }
+
+    private static int gray(int value) {
+        return 0xFF000000 | value << 16 | value << 8 | value;
+    }
+
+    // Separable box blur of a grey ARGB image, with clamped edges
+    private static void boxBlur(int[] argb, int width, int height, int radius) {
+        int[] gray = new int[argb.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += argb[y * width + Math.max(0, Math.min(width - 1, x + k))] & 0xFF;
+                }
+                gray[y * width + x] = sum / (2 * radius + 1);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += gray[Math.max(0, Math.min(height - 1, y + k)) * width + x];
+                }
+                argb[y * width + x] = gray(sum / (2 * radius + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ContentHashTest {
+
+    @Test
+    public void matchesFnv1aReferenceAndIgnoresChunking() {
+        byte[] foobar = "foobar".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(0xaf63dc4c8601ec8cL, ContentHash.update(ContentHash.INITIAL, new byte[]{'a'}, 0, 1));
+        assertEquals(0x85944171f73967e8L, ContentHash.update(ContentHash.INITIAL, foobar, 0, 6));
+        assertEquals(ContentHash.update(ContentHash.INITIAL, foobar, 0, 6),
+                ContentHash.update(ContentHash.update(ContentHash.INITIAL, foobar, 0, 2), foobar, 2, 4));
+    }
+
+    @Test
+    public void luminanceHashTracksPixelsAndShape() {
+        int[] argb = new int[16 * 8];
+        Arrays.fill(argb, TestCodes.WHITE);
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, 16, 8);
+        long wide = image.contentHash();
+
+        image.setArgb(argb, 8, 16);
+        assertNotEquals(wide, image.contentHash());
+
+        image.setArgb(argb, 16, 8);
+        assertEquals(wide, image.contentHash());
+        argb[37] = TestCodes.BLACK;
+        image.setArgb(argb, 16, 8);
+        assertNotEquals(wide, image.contentHash());
+    }
+}
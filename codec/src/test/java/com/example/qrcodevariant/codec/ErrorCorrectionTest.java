@@ -0,0 +1,72 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ErrorCorrectionTest {
+
+    private static final String DATA = "101101001110";
+
+    @Test
+    public void correctsOneFlippedCellPerBlock() {
+        BitBuffer code = new BitBuffer();
+        ErrorCorrection.HAMMING_7_4.encode(BitBuffer.fromBinaryString(DATA), 25, code);
+        code.set(2, !code.get(2));
+        code.set(13, !code.get(13));
+
+        BitBuffer data = new BitBuffer();
+        int corrected = ErrorCorrection.HAMMING_7_4.decode(code, null, data);
+
+        assertEquals(DATA, data.toBinaryString());
+        assertEquals(2, corrected);
+    }
+
+    @Test
+    public void softDecisionCorrectsTwoUncertainCellsInOneBlock() {
+        BitBuffer code = new BitBuffer();
+        ErrorCorrection.HAMMING_7_4.encode(BitBuffer.fromBinaryString(DATA), 25, code);
+        code.set(1, !code.get(1));
+        code.set(4, !code.get(4));
+        float[] confidence = new float[25];
+        Arrays.fill(confidence, 0.9f);
+        confidence[1] = 0.1f;
+        confidence[4] = 0.15f;
+
+        BitBuffer data = new BitBuffer();
+        int corrected = ErrorCorrection.HAMMING_7_4.decode(code, confidence, data);
+
+        assertEquals(DATA, data.toBinaryString());
+        assertEquals(2, corrected);
+    }
+
+    @Test
+    public void capacityMatchesGrid() {
+        assertEquals(4, ErrorCorrection.HAMMING_7_4.dataBits(CodeFormat.dataBits(5)));
+        assertEquals(12, ErrorCorrection.HAMMING_7_4.dataBits(CodeFormat.dataBits(7)));
+        assertEquals(25, ErrorCorrection.NONE.dataBits(CodeFormat.dataBits(7)));
+    }
+
+    @Test
+    public void decoderCorrectsSmudgedCellInImage() {
+        CodeSpec spec = new CodeSpec(7, ErrorCorrection.HAMMING_7_4);
+        BitBuffer cells = new BitBuffer();
+        spec.getErrorCorrection().encode(BitBuffer.fromBinaryString(DATA), spec.cellBits(), cells);
+        int blockSize = 40;
+        int side = 7 * blockSize;
+        int[] argb = TestCodes.render(cells.toBinaryString(), 7, blockSize);
+        // Paint over the first data cell with the opposite colour
+        int color = cells.get(0) ? TestCodes.WHITE : TestCodes.BLACK;
+        TestCodes.fill(argb, side, blockSize, blockSize, blockSize, blockSize, color);
+
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, side, side);
+        GridSampler sampler = new GridSampler();
+        BitBuffer payload = new BitBuffer();
+
+        assertEquals(1, new CodeDecoder().decodePayload(image, spec, sampler, payload));
+        assertEquals(DATA, payload.toBinaryString());
+    }
+}
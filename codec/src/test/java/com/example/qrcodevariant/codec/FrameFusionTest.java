@@ -0,0 +1,90 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrameFusionTest {
+
+    private static final CodeSpec SPEC = new CodeSpec(9, ErrorCorrection.NONE);
+    private static final String BITS = "1011001110001011010011100011010110010011100110100";
+    private static final String OTHER = "0100110001110100101100011100101001101100011001011";
+
+    @Test
+    public void fusesNoisyFramesThatFailAlone() {
+        LuminanceImage image = new LuminanceImage();
+        Random random = new Random(7);
+        CodeDecoder decoder = new CodeDecoder();
+        BitBuffer single = new BitBuffer();
+        FrameFusion fusion = new FrameFusion(4f);
+
+        int failedFrames = 0;
+        boolean committed = false;
+        for (int frame = 0; frame < 40 && !committed; frame++) {
+            NoisySampler sampler = new NoisySampler(BITS, 9, random, 45);
+            decoder.decode(image, 9, sampler, single);
+            if (!single.toBinaryString().equals(BITS)) {
+                failedFrames++;
+            }
+            committed = fusion.offer(image, SPEC, sampler);
+        }
+
+        assertTrue(committed);
+        assertTrue(failedFrames > 0);
+        assertEquals(BITS, fusion.getPayload().toBinaryString());
+    }
+
+    @Test
+    public void commitsOncePerCodeAndRestartsOnANewOne() {
+        LuminanceImage image = new LuminanceImage();
+        Random random = new Random(11);
+        FrameFusion fusion = new FrameFusion(2f);
+
+        assertFalse(fusion.offer(image, SPEC, new NoisySampler(BITS, 9, random, 0)));
+        assertTrue(fusion.offer(image, SPEC, new NoisySampler(BITS, 9, random, 0)));
+        assertFalse(fusion.offer(image, SPEC, new NoisySampler(BITS, 9, random, 0)));
+        assertEquals(BITS, fusion.getPayload().toBinaryString());
+
+        // A clearly different code discards the old evidence rather than being outvoted by it
+        assertFalse(fusion.offer(image, SPEC, new NoisySampler(OTHER, 9, random, 0)));
+        assertEquals(1, fusion.getFrameCount());
+        assertTrue(fusion.offer(image, SPEC, new NoisySampler(OTHER, 9, random, 0)));
+        assertEquals(OTHER, fusion.getPayload().toBinaryString());
+    }
+
+    /** Stands in for a located frame: fixed cell means with per-cell Gaussian noise. */
+    private static final class NoisySampler implements Sampler {
+
+        private final int[] means;
+
+        NoisySampler(String bits, int gridSize, Random random, double sigma) {
+            means = new int[gridSize * gridSize];
+            for (int i = 0; i < gridSize; i++) {
+                int border = i % 2 == 0 ? 60 : 190;
+                means[i] = border;
+                means[i * gridSize] = border;
+            }
+            int index = 0;
+            for (int row = 1; row < gridSize - 1; row++) {
+                for (int col = 1; col < gridSize - 1; col++) {
+                    int mean = bits.charAt(index++) == '1' ? 60 : 190;
+                    means[row * gridSize + col] = (int) Math.max(0, Math.min(255, mean + random.nextGaussian() * sigma));
+                }
+            }
+            // The last row and column are blank paper, as the encoder leaves them
+            for (int i = 1; i < gridSize; i++) {
+                means[(gridSize - 1) * gridSize + i] = 190;
+                means[i * gridSize + gridSize - 1] = 190;
+            }
+        }
+
+        @Override
+        public void sampleCells(LuminanceImage image, int gridSize, int[] cellMeans) {
+            System.arraycopy(means, 0, cellMeans, 0, means.length);
+        }
+    }
+}
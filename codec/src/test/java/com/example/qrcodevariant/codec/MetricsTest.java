@@ -0,0 +1,69 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void recordsNothingWhileDisabled() {
+        Metrics.reset();
+        long start = Metrics.start();
+        Metrics.stop(Metrics.Stage.DECODE, start);
+        Metrics.increment(Metrics.Counter.DECODE_SUCCESS);
+
+        assertEquals(0L, start);
+        assertEquals(0L, Metrics.histogram(Metrics.Stage.DECODE).count());
+        assertEquals(0L, Metrics.count(Metrics.Counter.DECODE_SUCCESS));
+    }
+
+    @Test
+    public void instrumentedDecodeKeepsItsResult() {
+        String bits = "1011001110100101110001011";
+        int[] argb = TestCodes.render(bits, 7, 40);
+        Metrics.reset();
+        Metrics.setEnabled(true);
+
+        assertEquals(bits, new CodeDecoder().decode(argb, 7 * 40, 7 * 40, 7));
+        assertEquals(1L, Metrics.histogram(Metrics.Stage.SAMPLE).count());
+        assertEquals(1L, Metrics.histogram(Metrics.Stage.DECODE).count());
+    }
+
+    @Test
+    public void histogramPercentilesBoundTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(10_000L);
+        }
+        histogram.record(5_000_000L);
+
+        assertEquals(100L, histogram.count());
+        assertEquals(16_000L, histogram.percentileNanos(50));
+        assertEquals(16_000L, histogram.percentileNanos(99));
+        assertEquals(5_000_000L, histogram.percentileNanos(100));
+        assertEquals(5_000_000L, histogram.maxNanos());
+    }
+
+    @Test
+    public void jsonListsEveryStageAndCounter() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        Metrics.add(Metrics.Counter.BITMAP_BYTES, 4096L);
+        String json = Metrics.toJson();
+
+        for (Metrics.Stage stage : Metrics.Stage.values()) {
+            assertTrue(json.contains("\"" + stage.name() + "\":{\"count\":"));
+        }
+        assertTrue(json.contains("\"BITMAP_BYTES\":4096"));
+        assertTrue(json.startsWith("{\"enabled\":true,"));
+    }
+}
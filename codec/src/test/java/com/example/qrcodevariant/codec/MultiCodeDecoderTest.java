@@ -0,0 +1,63 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MultiCodeDecoderTest {
+
+    private static final String[] PAYLOADS = {
+            "0110100111010010110100110",
+            "1011001110100101110001011",
+            "1100101011100100011101001",
+    };
+
+    @Test
+    public void decodesEveryCodeWithItsBounds() {
+        int width = 640;
+        int height = 400;
+        int[] argb = new int[width * height];
+        Arrays.fill(argb, TestCodes.WHITE);
+        int[][] origins = {{40, 30}, {360, 60}, {200, 240}};
+        for (int i = 0; i < PAYLOADS.length; i++) {
+            TestCodes.paste(argb, width, height, PAYLOADS[i], 7, 20, origins[i][0], origins[i][1]);
+        }
+        // Not a code: no alternating border
+        TestCodes.fill(argb, width, 520, 280, 80, 80, TestCodes.BLACK);
+
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, width, height);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<DecodedCode> codes = new MultiCodeDecoder(pool)
+                    .decodeAll(image, new CodeSpec(7, ErrorCorrection.NONE));
+
+            assertEquals(PAYLOADS.length, codes.size());
+            for (int i = 0; i < PAYLOADS.length; i++) {
+                DecodedCode code = codes.get(i);
+                assertEquals(PAYLOADS[i], code.payload.toBinaryString());
+                assertEquals(origins[i][0], code.bounds.left, 2);
+                assertEquals(origins[i][1], code.bounds.top, 2);
+                assertEquals(140, code.bounds.width(), 4);
+                assertEquals(0, code.correctedErrors);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void emptyImageYieldsNoCodes() {
+        int[] argb = new int[100 * 100];
+        Arrays.fill(argb, TestCodes.WHITE);
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(argb, 100, 100);
+
+        assertTrue(new MultiCodeDecoder().decodeAll(image, new CodeSpec(5, ErrorCorrection.NONE)).isEmpty());
+    }
+}
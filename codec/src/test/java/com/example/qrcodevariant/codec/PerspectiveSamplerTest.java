@@ -0,0 +1,59 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PerspectiveSamplerTest {
+
+    private static final String BITS = "1011001110100101110001011";
+
+    @Test
+    public void decodesSkewedAndTurnedCode() {
+        // Upright top-left, top-right, bottom-right, bottom-left; the code is turned so its
+        // top-left corner ends up on the right of the image
+        float[] placed = {330, 70, 310, 330, 60, 300, 90, 40};
+        LuminanceImage image = warp(placed, 400, 400);
+
+        float[] corners = new float[8];
+        assertTrue(new CodeLocator().locateCorners(image, 7, corners));
+        for (int i = 0; i < 8; i++) {
+            assertEquals("corner coordinate " + i, placed[i], corners[i], 4f);
+        }
+
+        PerspectiveSampler sampler = new PerspectiveSampler();
+        sampler.setCorners(corners);
+        assertEquals(BITS, new CodeDecoder().decode(image, 7, sampler));
+    }
+
+    // Draws the code onto a white canvas so that its outer corners land on `corners`
+    private static LuminanceImage warp(float[] corners, int width, int height) {
+        int blockSize = 40;
+        int size = 7 * blockSize;
+        int[] source = TestCodes.render(BITS, 7, blockSize);
+        int[] target = new int[width * height];
+        Arrays.fill(target, TestCodes.WHITE);
+
+        PerspectiveTransform transform = new PerspectiveTransform();
+        transform.setSquareToQuad(corners);
+        // Supersample the source so the contracted image has no holes
+        for (int sy = 0; sy < 2 * size; sy++) {
+            for (int sx = 0; sx < 2 * size; sx++) {
+                float u = (sx + 0.5f) / (2 * size);
+                float v = (sy + 0.5f) / (2 * size);
+                int x = (int) transform.mapX(u, v);
+                int y = (int) transform.mapY(u, v);
+                if (x >= 0 && x < width && y >= 0 && y < height) {
+                    target[y * width + x] = source[(sy / 2) * size + sx / 2];
+                }
+            }
+        }
+
+        LuminanceImage image = new LuminanceImage();
+        image.setArgb(target, width, height);
+        return image;
+    }
+}
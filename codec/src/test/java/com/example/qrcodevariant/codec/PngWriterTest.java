@@ -0,0 +1,86 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PngWriterTest {
+
+    @Test
+    public void matchesRenderedPixels() throws Exception {
+        int gridSize = 9;
+        int blockSize = 13;
+        ModuleMatrix modules = new ModuleMatrix();
+        CodeEncoder.encodeModules(BitBuffer.fromBinaryString(
+                "1001011100101101001110100101010011011010101001011"), gridSize, modules);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        new PngWriter().write(modules, blockSize, png);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+
+        int side = CodeEncoder.sideLength(gridSize, blockSize);
+        int[] expected = new int[side * side];
+        CodeEncoder.render(modules, blockSize, expected);
+        assertEquals(side, image.getWidth());
+        assertEquals(side, image.getHeight());
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                assertEquals("pixel " + x + "," + y, expected[y * side + x], image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void writesMultiLevelCodesAsGrayscale() throws Exception {
+        int gridSize = 7;
+        int blockSize = 11;
+        for (CellLevels levels : new CellLevels[]{CellLevels.GRAY_4, CellLevels.GRAY_8}) {
+            BitBuffer payload = new BitBuffer(CodeFormat.dataBits(gridSize, levels));
+            for (int i = 0; i < payload.length(); i += 3) {
+                payload.set(i, true);
+            }
+            ModuleMatrix modules = new ModuleMatrix();
+            CodeEncoder.encodeModules(payload, gridSize, levels, modules);
+
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            new PngWriter().write(modules, blockSize, png);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png.toByteArray()));
+
+            int side = CodeEncoder.sideLength(gridSize, blockSize);
+            int[] expected = new int[side * side];
+            CodeEncoder.render(modules, blockSize, expected);
+            // Compare raw samples; getRGB would push the greys through a colour conversion
+            int maxSample = (1 << image.getColorModel().getPixelSize()) - 1;
+            for (int y = 0; y < side; y++) {
+                for (int x = 0; x < side; x++) {
+                    int gray = image.getRaster().getSample(x, y, 0) * 255 / maxSample;
+                    assertEquals("pixel " + x + "," + y, expected[y * side + x] & 0xFF, gray);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void largeCodeStaysSmall() throws Exception {
+        int gridSize = CodeFormat.MAX_GRID_SIZE;
+        BitBuffer payload = new BitBuffer(CodeFormat.dataBits(gridSize));
+        for (int i = 0; i < payload.length(); i += 2) {
+            payload.set(i, true);
+        }
+        ModuleMatrix modules = new ModuleMatrix();
+        CodeEncoder.encodeModules(payload, gridSize, modules);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        new PngWriter().write(modules, CodeFormat.blockSizeFor(gridSize), png);
+
+        // The same image as ARGB_8888 is about 7 MB uncompressed
+        assertTrue("PNG size " + png.size(), png.size() < 64 * 1024);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.qrcodevariant.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StressReportTest {
+
+    @Test
+    public void capturesAreDeterministic() {
+        BitBuffer payload = BitBuffer.fromBinaryString("1011001110100101110001011");
+        Condition condition = Condition.clean("mixed").withRotation(20f).withNoise(15f).withJpeg(50);
+        LuminanceImage first = new LuminanceImage();
+        LuminanceImage second = new LuminanceImage();
+
+        new SyntheticCapture(160, 120).capture(payload, 7, condition, 42L, first);
+        new SyntheticCapture(160, 120).capture(payload, 7, condition, 42L, second);
+
+        assertArrayEquals(first.getData(), second.getData());
+    }
+
+    @Test
+    public void cleanCapturesDecodeWithoutErrors() throws InterruptedException {
+        List<StressReport.Row> rows = new StressReport(
+                Collections.singletonList(Condition.clean("clean")), new int[]{7, 21},
+                ErrorCorrection.NONE, 5, 2).run();
+
+        assertEquals(2, rows.size());
+        for (StressReport.Row row : rows) {
+            assertEquals(1.0, row.locatedRate(), 0.0);
+            assertEquals(1.0, row.successRate(), 0.0);
+            assertEquals(0.0, row.bitErrorRate(), 0.0);
+        }
+    }
+
+    @Test
+    public void percentileUsesNearestRank() {
+        long[] sorted = new long[100];
+        Arrays.setAll(sorted, i -> i + 1);
+
+        assertEquals(50, StressReport.percentile(sorted, 50));
+        assertEquals(99, StressReport.percentile(sorted, 99));
+        assertEquals(7, StressReport.percentile(new long[]{7}, 99));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.qrcodevariant.codec;
+
+import java.util.Arrays;
+
+/** Renders codes for tests the same way MainActivity.generateQRCodeVariant draws them. */
+final class TestCodes {
+
+    static final int BLACK = 0xFF000000;
+    static final int WHITE = 0xFFFFFFFF;
+
+    private TestCodes() {
+    }
+
+    static int[] render(String bits, int gridSize, int blockSize) {
+        int size = gridSize * blockSize;
+        int[] argb = new int[size * size];
+        Arrays.fill(argb, WHITE);
+        paste(argb, size, size, bits, gridSize, blockSize, 0, 0);
+        return argb;
+    }
+
+    /** Draws a code with its top-left corner at (x, y) into a larger white canvas. */
+    static void paste(int[] argb, int width, int height, String bits, int gridSize, int blockSize, int x, int y) {
+        for (int i = 0; i < gridSize; i++) {
+            int color = (i % 2 == 0) ? BLACK : WHITE;
+            fill(argb, width, x + i * blockSize, y, blockSize, blockSize, color);
+            fill(argb, width, x, y + i * blockSize, blockSize, blockSize, color);
+        }
+        int index = 0;
+        for (int row = 1; row < gridSize - 1; row++) {
+            for (int col = 1; col < gridSize - 1; col++) {
+                int color = bits.charAt(index++) == '1' ? BLACK : WHITE;
+                fill(argb, width, x + col * blockSize, y + row * blockSize, blockSize, blockSize, color);
+            }
+        }
+
+        // 3px grid lines centred on the block boundaries, clipped to the code
+        int size = gridSize * blockSize;
+        for (int i = 0; i <= gridSize; i++) {
+            int line = Math.max(0, i * blockSize - 1);
+            int thickness = Math.min(size, i * blockSize + 2) - line;
+            fill(argb, width, x, y + line, size, thickness, BLACK);
+            fill(argb, width, x + line, y, thickness, size, BLACK);
+        }
+    }
+
+    static void fill(int[] argb, int stride, int x, int y, int w, int h, int color) {
+        for (int row = y; row < y + h; row++) {
+            Arrays.fill(argb, row * stride + x, row * stride + x + w, color);
+        }
+    }
+}
@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Qrcodevariant"
 include(":app")
+include(":codec")
  
\ No newline at end of file